@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.extensions.mmkv
+
+/**
+ * [mmkvObject] 使用的编解码器，按固定顺序读写字段，格式由实现自己决定，和类的结构、Parcel 的实现无关
+ * 新增字段只能追加在最后，读取时通过 [BinaryReader.hasRemaining] 判断旧数据中是否存在，这样新旧版本可以互相读取
+ *
+ * ```kotlin
+ * data class User(val id: Long, val name: String, val vip: Boolean = false)
+ *
+ * object UserCodec : MMKVCodec<User> {
+ *   override fun encode(value: User, writer: BinaryWriter) {
+ *     writer.writeLong(value.id)
+ *     writer.writeString(value.name)
+ *     writer.writeBoolean(value.vip)
+ *   }
+ *
+ *   override fun decode(reader: BinaryReader): User =
+ *     User(reader.readLong(), reader.readString()!!, reader.hasRemaining() && reader.readBoolean())
+ * }
+ *
+ * var user by mmkvObject("user", UserCodec)
+ * ```
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+interface MMKVCodec<T> {
+  fun encode(value: T, writer: BinaryWriter)
+
+  fun decode(reader: BinaryReader): T
+}
+
+/**
+ * 紧凑的二进制写入：Int/Long 为 zigzag 变长编码，Float/Double 为定长小端，String/ByteArray 为长度前缀
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+class BinaryWriter(initialCapacity: Int = 64) {
+  private var buffer = ByteArray(initialCapacity.coerceAtLeast(16))
+
+  /**
+   * 已经写入的字节数
+   */
+  var size = 0
+    private set
+
+  fun writeByte(value: Int) {
+    ensureCapacity(1)
+    buffer[size++] = value.toByte()
+  }
+
+  fun writeBoolean(value: Boolean) {
+    writeByte(if (value) 1 else 0)
+  }
+
+  /**
+   * 无符号变长编码，适合长度、枚举序号等非负数
+   */
+  fun writeVarInt(value: Int) {
+    ensureCapacity(5)
+    var v = value
+    while (v and 0x7F.inv() != 0) {
+      buffer[size++] = ((v and 0x7F) or 0x80).toByte()
+      v = v ushr 7
+    }
+    buffer[size++] = v.toByte()
+  }
+
+  fun writeInt(value: Int) {
+    writeVarInt((value shl 1) xor (value shr 31))
+  }
+
+  fun writeLong(value: Long) {
+    ensureCapacity(10)
+    var v = (value shl 1) xor (value shr 63)
+    while (v and 0x7FL.inv() != 0L) {
+      buffer[size++] = ((v and 0x7FL) or 0x80L).toByte()
+      v = v ushr 7
+    }
+    buffer[size++] = v.toByte()
+  }
+
+  fun writeFloat(value: Float) {
+    writeFixed(java.lang.Float.floatToRawIntBits(value).toLong(), 4)
+  }
+
+  fun writeDouble(value: Double) {
+    writeFixed(java.lang.Double.doubleToRawLongBits(value), 8)
+  }
+
+  /**
+   * 长度加一写在前面，0 表示 null
+   */
+  fun writeString(value: String?) {
+    writeBytes(value?.toByteArray(Charsets.UTF_8))
+  }
+
+  fun writeBytes(value: ByteArray?) {
+    if (value == null) {
+      writeVarInt(0)
+      return
+    }
+    writeVarInt(value.size + 1)
+    ensureCapacity(value.size)
+    System.arraycopy(value, 0, buffer, size, value.size)
+    size += value.size
+  }
+
+  /**
+   * 嵌套对象，前面写一个字节标记是否为 null
+   */
+  fun <T> writeObject(value: T?, codec: MMKVCodec<T>) {
+    writeBoolean(value != null)
+    if (value != null) {
+      codec.encode(value, this)
+    }
+  }
+
+  fun <T> writeList(value: List<T>, codec: MMKVCodec<T>) {
+    writeVarInt(value.size)
+    for (element in value) {
+      codec.encode(element, this)
+    }
+  }
+
+  fun toByteArray(): ByteArray = buffer.copyOf(size)
+
+  private fun writeFixed(bits: Long, byteCount: Int) {
+    ensureCapacity(byteCount)
+    for (i in 0 until byteCount) {
+      buffer[size++] = (bits ushr (i * 8)).toByte()
+    }
+  }
+
+  private fun ensureCapacity(extra: Int) {
+    if (size + extra > buffer.size) {
+      buffer = buffer.copyOf(maxOf(buffer.size * 2, size + extra))
+    }
+  }
+}
+
+/**
+ * 直接在 MMKV 返回的字节数组上按 [BinaryWriter] 的格式读取，除了 String 和 ByteArray 不会复制数据
+ * 数据不完整时抛出 IllegalArgumentException
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+class BinaryReader(private val bytes: ByteArray) {
+  /**
+   * 下一个读取的位置
+   */
+  var position = 0
+    private set
+
+  fun hasRemaining(): Boolean = position < bytes.size
+
+  fun readByte(): Int {
+    checkAvailable(1)
+    return bytes[position++].toInt()
+  }
+
+  fun readBoolean(): Boolean = readByte() != 0
+
+  fun readVarInt(): Int {
+    var result = 0
+    var shift = 0
+    while (shift < 32) {
+      val b = readByte()
+      result = result or ((b and 0x7F) shl shift)
+      if (b and 0x80 == 0) {
+        return result
+      }
+      shift += 7
+    }
+    throw IllegalArgumentException("Malformed varint at $position")
+  }
+
+  fun readInt(): Int {
+    val v = readVarInt()
+    return (v ushr 1) xor -(v and 1)
+  }
+
+  fun readLong(): Long {
+    var v = 0L
+    var shift = 0
+    while (true) {
+      if (shift >= 64) {
+        throw IllegalArgumentException("Malformed varlong at $position")
+      }
+      val b = readByte()
+      v = v or ((b and 0x7F).toLong() shl shift)
+      if (b and 0x80 == 0) {
+        break
+      }
+      shift += 7
+    }
+    return (v ushr 1) xor -(v and 1L)
+  }
+
+  fun readFloat(): Float = java.lang.Float.intBitsToFloat(readFixed(4).toInt())
+
+  fun readDouble(): Double = java.lang.Double.longBitsToDouble(readFixed(8))
+
+  fun readString(): String? {
+    val length = readVarInt() - 1
+    if (length < 0) {
+      return null
+    }
+    checkAvailable(length)
+    val value = String(bytes, position, length, Charsets.UTF_8)
+    position += length
+    return value
+  }
+
+  fun readBytes(): ByteArray? {
+    val length = readVarInt() - 1
+    if (length < 0) {
+      return null
+    }
+    checkAvailable(length)
+    val value = bytes.copyOfRange(position, position + length)
+    position += length
+    return value
+  }
+
+  fun <T> readObject(codec: MMKVCodec<T>): T? =
+    if (readBoolean()) codec.decode(this) else null
+
+  fun <T> readList(codec: MMKVCodec<T>): List<T> {
+    val count = readVarInt()
+    // 每个元素至少占一个字节，避免损坏的数据申请过大的数组
+    checkAvailable(count)
+    val list = ArrayList<T>(count)
+    for (i in 0 until count) {
+      list.add(codec.decode(this))
+    }
+    return list
+  }
+
+  private fun readFixed(byteCount: Int): Long {
+    checkAvailable(byteCount)
+    var bits = 0L
+    for (i in 0 until byteCount) {
+      bits = bits or ((bytes[position++].toLong() and 0xFFL) shl (i * 8))
+    }
+    return bits
+  }
+
+  private fun checkAvailable(byteCount: Int) {
+    if (byteCount < 0 || byteCount > bytes.size - position) {
+      throw IllegalArgumentException("Need $byteCount bytes at $position, size=${bytes.size}")
+    }
+  }
+}
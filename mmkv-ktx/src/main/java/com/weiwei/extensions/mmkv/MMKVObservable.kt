@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.extensions.mmkv
+
+import android.os.Handler
+import android.os.Looper
+import android.view.Choreographer
+import androidx.lifecycle.LiveData
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.conflate
+import kotlinx.coroutines.flow.distinctUntilChanged
+
+/**
+ * 可观察的 key：通过属性写入（包括事务提交和 write-behind）、其他进程修改时通知，
+ * 同一帧内的多次修改合并为一次，在下一帧开始时重新读取，值没有变化时不回调
+ *
+ * ```kotlin
+ * object Settings : MMKVStoreOwner {
+ *   var fontSize by mmkvInt("font_size", 14)
+ *   val fontSizeLiveData = mmkvIntLiveData("font_size", 14)
+ * }
+ *
+ * Settings.fontSizeLiveData.observe(this) { textView.textSize = it.toFloat() }
+ * lifecycleScope.launch { Settings.mmkvStringFlow("theme").collect { applyTheme(it) } }
+ * ```
+ *
+ * 直接调用 kv.encode 的修改不会通知；其他进程的修改在 MMKV 检查到之后通知，开始观察时会检查一次，
+ * 需要先调用 [registerMMKVContentChangeNotify] 或者在应用自己的通知中调用 [dispatchMMKVContentChanged]
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+fun <V> MMKVProperty<V>.asFlow(owner: MMKVStoreOwner): Flow<V> = callbackFlow {
+  val observer = object : KeyObserver {
+    override fun onKeyChanged() {
+      trySend(get(owner))
+    }
+  }
+  // 先注册再读取初始值，两者之间的修改不会丢失
+  addObserver(owner, observer)
+  checkContentChanged(owner)
+  send(get(owner))
+  awaitClose { removeObserver(owner, observer) }
+}.conflate().distinctUntilChanged()
+
+/**
+ * 有活跃的观察者时才注册，见 [asFlow]
+ */
+fun <V> MMKVProperty<V>.asLiveData(owner: MMKVStoreOwner): LiveData<V> =
+  MMKVLiveData(owner, this)
+
+//region Flow
+fun MMKVStoreOwner.mmkvIntFlow(key: String, default: Int = 0): Flow<Int> =
+  mmkvInt(key, default).asFlow(this)
+
+fun MMKVStoreOwner.mmkvLongFlow(key: String, default: Long = 0L): Flow<Long> =
+  mmkvLong(key, default).asFlow(this)
+
+fun MMKVStoreOwner.mmkvFloatFlow(key: String, default: Float = 0f): Flow<Float> =
+  mmkvFloat(key, default).asFlow(this)
+
+fun MMKVStoreOwner.mmkvDoubleFlow(key: String, default: Double = 0.0): Flow<Double> =
+  mmkvDouble(key, default).asFlow(this)
+
+fun MMKVStoreOwner.mmkvBooleanFlow(key: String, default: Boolean = false): Flow<Boolean> =
+  mmkvBoolean(key, default).asFlow(this)
+
+fun MMKVStoreOwner.mmkvStringFlow(key: String): Flow<String?> =
+  mmkvString(key).asFlow(this)
+
+fun MMKVStoreOwner.mmkvStringFlow(key: String, default: String): Flow<String> =
+  mmkvString(key, default).asFlow(this)
+
+fun MMKVStoreOwner.mmkvStringSetFlow(key: String): Flow<Set<String>?> =
+  mmkvStringSet(key).asFlow(this)
+
+fun <T : Any> MMKVStoreOwner.mmkvObjectFlow(key: String, codec: MMKVCodec<T>): Flow<T?> =
+  mmkvObject(key, codec).asFlow(this)
+//endregion
+
+//region LiveData
+fun MMKVStoreOwner.mmkvIntLiveData(key: String, default: Int = 0): LiveData<Int> =
+  mmkvInt(key, default).asLiveData(this)
+
+fun MMKVStoreOwner.mmkvLongLiveData(key: String, default: Long = 0L): LiveData<Long> =
+  mmkvLong(key, default).asLiveData(this)
+
+fun MMKVStoreOwner.mmkvFloatLiveData(key: String, default: Float = 0f): LiveData<Float> =
+  mmkvFloat(key, default).asLiveData(this)
+
+fun MMKVStoreOwner.mmkvDoubleLiveData(key: String, default: Double = 0.0): LiveData<Double> =
+  mmkvDouble(key, default).asLiveData(this)
+
+fun MMKVStoreOwner.mmkvBooleanLiveData(key: String, default: Boolean = false): LiveData<Boolean> =
+  mmkvBoolean(key, default).asLiveData(this)
+
+fun MMKVStoreOwner.mmkvStringLiveData(key: String): LiveData<String?> =
+  mmkvString(key).asLiveData(this)
+
+fun MMKVStoreOwner.mmkvStringLiveData(key: String, default: String): LiveData<String> =
+  mmkvString(key, default).asLiveData(this)
+
+fun MMKVStoreOwner.mmkvStringSetLiveData(key: String): LiveData<Set<String>?> =
+  mmkvStringSet(key).asLiveData(this)
+
+fun <T : Any> MMKVStoreOwner.mmkvObjectLiveData(key: String, codec: MMKVCodec<T>): LiveData<T?> =
+  mmkvObject(key, codec).asLiveData(this)
+//endregion
+
+internal interface KeyObserver {
+  /**
+   * 在主线程回调
+   */
+  fun onKeyChanged()
+}
+
+private class MMKVLiveData<V>(
+  private val owner: MMKVStoreOwner,
+  private val property: MMKVProperty<V>
+) : LiveData<V>(), KeyObserver {
+  private var hasValue = false
+
+  override fun onActive() {
+    property.addObserver(owner, this)
+    property.checkContentChanged(owner)
+    onKeyChanged()
+  }
+
+  override fun onInactive() {
+    property.removeObserver(owner, this)
+  }
+
+  override fun onKeyChanged() {
+    val newValue = property.get(owner)
+    if (!hasValue || newValue != value) {
+      hasValue = true
+      setValue(newValue)
+    }
+  }
+}
+
+/**
+ * 收集修改过的 key，在下一帧开始时统一通知，一帧内的多次写入只会让每个观察者读取一次
+ */
+internal object MMKVChangeDispatcher : Runnable, Choreographer.FrameCallback {
+  private val mainHandler = Handler(Looper.getMainLooper())
+
+  /**
+   * value 为 null 表示这个 MMKV 的所有 key
+   */
+  private var changed = LinkedHashMap<MMKVStore, HashSet<String>?>()
+  private var scheduled = false
+
+  /**
+   * @param key null 表示所有 key
+   */
+  fun post(store: MMKVStore, key: String?) {
+    synchronized(this) {
+      if (!changed.containsKey(store)) {
+        changed[store] = if (key == null) null else hashSetOf(key)
+      } else if (key == null) {
+        changed[store] = null
+      } else {
+        changed[store]?.add(key)
+      }
+      if (scheduled) {
+        return
+      }
+      scheduled = true
+    }
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      run()
+    } else {
+      mainHandler.post(this)
+    }
+  }
+
+  /**
+   * Choreographer 只能在主线程获取
+   */
+  override fun run() {
+    Choreographer.getInstance().postFrameCallback(this)
+  }
+
+  override fun doFrame(frameTimeNanos: Long) {
+    val batch = synchronized(this) {
+      scheduled = false
+      changed.also { changed = LinkedHashMap() }
+    }
+    for ((store, keys) in batch) {
+      store.dispatchChanged(keys)
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.weiwei.extensions.mmkv
 
 import android.os.Parcelable
+import android.util.Log
 import com.tencent.mmkv.MMKV
 import kotlin.properties.ReadWriteProperty
 import kotlin.reflect.KProperty
@@ -33,7 +34,19 @@ import kotlin.reflect.KProperty
  * @author weicools
  */
 interface MMKVStoreOwner {
-  val kv: MMKV get() = MMKV.defaultMMKV()
+  val kv: MMKV get() = MMKVStore.defaultKv
+
+  /**
+   * 开启后属性读取的值缓存在属性对象中，写入时更新，其他进程修改时失效（多进程需要 [registerMMKVContentChangeNotify]），命中时不访问 MMKV
+   * 缓存模式下 Set、ByteArray 等返回的是同一个对象，不要修改；直接调用 kv.encode 的修改不会使缓存失效
+   */
+  val kvCacheEnabled: Boolean get() = false
+
+  /**
+   * 开启后属性写入只更新内存中的值，由后台队列写入 MMKV，同一个 key 的多次写入合并为一次，通过属性读取总是能读到最新的值
+   * 进程被杀死时还没写入的值会丢失，重要的写入之后调用 [kvFlush]；直接调用 kv.decode 读不到还没写入的值
+   */
+  val kvWriteBehind: Boolean get() = false
 }
 
 /**
@@ -41,159 +54,336 @@ interface MMKVStoreOwner {
  */
 
 //region MMKV Property
+/**
+ * 属性的读写基类，子类只需要实现对应类型的 decode/encode
+ */
+abstract class MMKVProperty<V>(
+  protected val key: String
+) : ReadWriteProperty<MMKVStoreOwner, V> {
+
+  @Volatile
+  private var binding: Binding? = null
+
+  @Volatile
+  private var cached: Cached? = null
+
+  /**
+   * 解码成本高的类型返回 true，不管 owner 是否开启 kvCacheEnabled 都缓存解码后的对象
+   */
+  protected open val alwaysCache: Boolean get() = false
+
+  protected abstract fun decode(kv: MMKV): V
+
+  protected abstract fun encode(kv: MMKV, value: V)
+
+  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): V = get(thisRef)
+
+  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: V) {
+    set(thisRef, value)
+  }
+
+  internal fun get(thisRef: MMKVStoreOwner): V {
+    val store = storeOf(thisRef)
+    val tx = store.currentTransaction()
+    if (tx != null) {
+      val pending = tx.writes[key]
+      if (pending != null && pending.property.javaClass === javaClass) {
+        @Suppress("UNCHECKED_CAST")
+        return pending.value as V
+      }
+    }
+
+    val cacheEnabled = alwaysCache || thisRef.kvCacheEnabled
+    if (cacheEnabled) {
+      store.checkContentChanged()
+    }
+    // 先读版本号再查 write-behind 的值：之后的 write-behind 写入会改变版本号，读到的旧值不会被返回和缓存
+    val version = store.version
+    val pending = pendingOf(store)
+    if (pending != null) {
+      @Suppress("UNCHECKED_CAST")
+      return pending.value as V
+    }
+
+    if (cacheEnabled) {
+      val c = cached
+      if (c != null && c.store === store && c.version == version) {
+        @Suppress("UNCHECKED_CAST")
+        return c.value as V
+      }
+    }
+
+    if (version and 1L == 0L) {
+      val value = decode(store.kv)
+      if (store.version == version) {
+        if (cacheEnabled) {
+          cached = Cached(store, version, value)
+        }
+        return value
+      }
+    }
+    // 正在写入（包括事务提交），等待写入完成后读取，其他线程不会看到事务只提交了一部分的状态
+    synchronized(store.lock) {
+      // 打断读取的可能是 write-behind 写入，新值还没写入 MMKV
+      val latest = pendingOf(store)
+      if (latest != null) {
+        @Suppress("UNCHECKED_CAST")
+        return latest.value as V
+      }
+      val value = decode(store.kv)
+      if (cacheEnabled) {
+        cached = Cached(store, store.version, value)
+      }
+      return value
+    }
+  }
+
+  /**
+   * @return 这个 key 还没写入 MMKV 的 write-behind 值，类型不同的属性写入的值不算
+   */
+  private fun pendingOf(store: MMKVStore): MMKVStore.PendingWrite? {
+    val pending = store.pendingWrite(key)
+    return if (pending != null && pending.property.javaClass === javaClass) pending else null
+  }
+
+  internal fun set(thisRef: MMKVStoreOwner, value: V) {
+    val store = storeOf(thisRef)
+    val tx = store.currentTransaction()
+    if (tx != null) {
+      tx.writes[key] = MMKVStore.PendingWrite(this, value)
+      if (thisRef.kvWriteBehind) {
+        tx.writeBehind = true
+      }
+      return
+    }
+    val version = if (thisRef.kvWriteBehind) {
+      store.writeBehind(key, MMKVStore.PendingWrite(this, value))
+    } else {
+      store.write { kv ->
+        store.discardPending(key)
+        encode(kv, value)
+      }
+    }
+    if (alwaysCache || thisRef.kvCacheEnabled) {
+      cached = Cached(store, version, value)
+    }
+    store.notifyChanged(key)
+  }
+
+  internal fun addObserver(thisRef: MMKVStoreOwner, observer: KeyObserver) {
+    storeOf(thisRef).addObserver(key, observer)
+  }
+
+  internal fun removeObserver(thisRef: MMKVStoreOwner, observer: KeyObserver) {
+    storeOf(thisRef).removeObserver(key, observer)
+  }
+
+  /**
+   * 开始观察前检查一次其他进程的修改，之后的修改通过 MMKV 的通知回调
+   */
+  internal fun checkContentChanged(thisRef: MMKVStoreOwner) {
+    storeOf(thisRef).checkContentChanged()
+  }
+
+  internal fun encodeAny(kv: MMKV, value: Any?) {
+    @Suppress("UNCHECKED_CAST")
+    encode(kv, value as V)
+  }
+
+  /**
+   * owner 的 kv 一般不会变化，按对象地址复用上一次的 MMKVStore，避免每次通过 mmapID 查找
+   */
+  private fun storeOf(thisRef: MMKVStoreOwner): MMKVStore {
+    val kv = thisRef.kv
+    val b = binding
+    if (b != null && b.kv === kv) {
+      return b.store
+    }
+    val store = MMKVStore.of(kv)
+    binding = Binding(kv, store)
+    return store
+  }
+
+  private class Binding(val kv: MMKV, val store: MMKVStore)
+
+  private class Cached(val store: MMKVStore, val version: Long, val value: Any?)
+}
+
 class MMKVIntProperty(
-  private val key: String,
+  key: String,
   private val defaultValue: Int
-) : ReadWriteProperty<MMKVStoreOwner, Int> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): Int =
-    thisRef.kv.decodeInt(key, defaultValue)
+) : MMKVProperty<Int>(key) {
+  override fun decode(kv: MMKV): Int = kv.decodeInt(key, defaultValue)
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: Int) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: Int) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVLongProperty(
-  private val key: String,
+  key: String,
   private val defaultValue: Long
-) : ReadWriteProperty<MMKVStoreOwner, Long> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): Long =
-    thisRef.kv.decodeLong(key, defaultValue)
+) : MMKVProperty<Long>(key) {
+  override fun decode(kv: MMKV): Long = kv.decodeLong(key, defaultValue)
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: Long) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: Long) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVFloatProperty(
-  private val key: String,
+  key: String,
   private val defaultValue: Float
-) : ReadWriteProperty<MMKVStoreOwner, Float> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): Float =
-    thisRef.kv.decodeFloat(key, defaultValue)
+) : MMKVProperty<Float>(key) {
+  override fun decode(kv: MMKV): Float = kv.decodeFloat(key, defaultValue)
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: Float) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: Float) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVDoubleProperty(
-  private val key: String,
+  key: String,
   private val defaultValue: Double
-) : ReadWriteProperty<MMKVStoreOwner, Double> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): Double =
-    thisRef.kv.decodeDouble(key, defaultValue)
+) : MMKVProperty<Double>(key) {
+  override fun decode(kv: MMKV): Double = kv.decodeDouble(key, defaultValue)
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: Double) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: Double) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVBooleanProperty(
-  private val key: String,
+  key: String,
   private val defaultValue: Boolean
-) : ReadWriteProperty<MMKVStoreOwner, Boolean> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): Boolean =
-    thisRef.kv.decodeBool(key, defaultValue)
+) : MMKVProperty<Boolean>(key) {
+  override fun decode(kv: MMKV): Boolean = kv.decodeBool(key, defaultValue)
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: Boolean) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: Boolean) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVStringProperty(
-  private val key: String
-) : ReadWriteProperty<MMKVStoreOwner, String?> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): String? =
-    thisRef.kv.decodeString(key, null)
+  key: String
+) : MMKVProperty<String?>(key) {
+  override fun decode(kv: MMKV): String? = kv.decodeString(key, null)
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: String?) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: String?) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVStringWithDefaultProperty(
-  private val key: String,
+  key: String,
   private val defaultValue: String
-) : ReadWriteProperty<MMKVStoreOwner, String> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): String =
-    thisRef.kv.decodeString(key, defaultValue)!!
+) : MMKVProperty<String>(key) {
+  override fun decode(kv: MMKV): String = kv.decodeString(key, defaultValue)!!
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: String) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: String) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVStringSetProperty(
-  private val key: String
-) : ReadWriteProperty<MMKVStoreOwner, Set<String>?> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): Set<String>? =
-    thisRef.kv.decodeStringSet(key, null)
+  key: String
+) : MMKVProperty<Set<String>?>(key) {
+  override fun decode(kv: MMKV): Set<String>? = kv.decodeStringSet(key, null)
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: Set<String>?) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: Set<String>?) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVStringSetWithDefaultProperty(
-  private val key: String,
+  key: String,
   private val defaultValue: Set<String>
-) : ReadWriteProperty<MMKVStoreOwner, Set<String>> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): Set<String> =
-    thisRef.kv.decodeStringSet(key, defaultValue)!!
+) : MMKVProperty<Set<String>>(key) {
+  override fun decode(kv: MMKV): Set<String> = kv.decodeStringSet(key, defaultValue)!!
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: Set<String>) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: Set<String>) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVByteArrayProperty(
-  private val key: String
-) : ReadWriteProperty<MMKVStoreOwner, ByteArray?> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): ByteArray? =
-    thisRef.kv.decodeBytes(key, null)
+  key: String
+) : MMKVProperty<ByteArray?>(key) {
+  override fun decode(kv: MMKV): ByteArray? = kv.decodeBytes(key, null)
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: ByteArray?) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: ByteArray?) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVByteArrayWithDefaultProperty(
-  private val key: String,
+  key: String,
   private val defaultValue: ByteArray
-) : ReadWriteProperty<MMKVStoreOwner, ByteArray> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): ByteArray =
-    thisRef.kv.decodeBytes(key, defaultValue)!!
+) : MMKVProperty<ByteArray>(key) {
+  override fun decode(kv: MMKV): ByteArray = kv.decodeBytes(key, defaultValue)!!
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: ByteArray) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: ByteArray) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVParcelableProperty<V : Parcelable>(
   private val clazz: Class<V>,
-  private val key: String
-) : ReadWriteProperty<MMKVStoreOwner, V?> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): V? {
-    return thisRef.kv.decodeParcelable(property.name, clazz)
-  }
+  key: String
+) : MMKVProperty<V?>(key) {
+  override fun decode(kv: MMKV): V? = kv.decodeParcelable(key, clazz)
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: V?) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: V?) {
+    kv.encode(key, value)
   }
 }
 
 class MMKVParcelablePropertyWithDefault<V : Parcelable>(
   private val clazz: Class<V>,
-  private val key: String,
+  key: String,
   private val defaultValue: V
-) : ReadWriteProperty<MMKVStoreOwner, V> {
-  override fun getValue(thisRef: MMKVStoreOwner, property: KProperty<*>): V {
-    return thisRef.kv.decodeParcelable(property.name, clazz) ?: defaultValue
+) : MMKVProperty<V>(key) {
+  override fun decode(kv: MMKV): V = kv.decodeParcelable(key, clazz) ?: defaultValue
+
+  override fun encode(kv: MMKV, value: V) {
+    kv.encode(key, value)
+  }
+}
+
+/**
+ * 通过 [MMKVCodec] 读写对象，存储为 ByteArray，解码后的对象按 MMKVStore 的版本号缓存，
+ * 只在写入或其他进程修改后第一次读取时重新解码，返回的是同一个对象，不要修改
+ */
+class MMKVObjectProperty<V>(
+  key: String,
+  private val codec: MMKVCodec<V>,
+  private val defaultValue: V
+) : MMKVProperty<V>(key) {
+  override val alwaysCache: Boolean get() = true
+
+  override fun decode(kv: MMKV): V {
+    val bytes = kv.decodeBytes(key, null) ?: return defaultValue
+    return try {
+      codec.decode(BinaryReader(bytes))
+    } catch (e: RuntimeException) {
+      // 数据损坏或者格式不兼容时返回默认值，下一次写入会覆盖
+      Log.e(TAG, "decode $key error $e")
+      defaultValue
+    }
   }
 
-  override fun setValue(thisRef: MMKVStoreOwner, property: KProperty<*>, value: V) {
-    thisRef.kv.encode(key, value)
+  override fun encode(kv: MMKV, value: V) {
+    if (value == null) {
+      kv.removeValueForKey(key)
+    } else {
+      val writer = BinaryWriter()
+      codec.encode(value, writer)
+      kv.encode(key, writer.toByteArray())
+    }
+  }
+
+  private companion object {
+    const val TAG = "MMKVObjectProperty"
   }
 }
 //endregion
@@ -236,3 +426,13 @@ inline fun <reified T : Parcelable> MMKVStoreOwner.mmkvParcelable(key: String) =
 
 inline fun <reified T : Parcelable> MMKVStoreOwner.mmkvParcelable(key: String, default: T) =
   MMKVParcelablePropertyWithDefault(T::class.java, key, default)
+
+/**
+ * 没有存储时返回 null，写入 null 时删除这个 key
+ */
+@Suppress("UNCHECKED_CAST")
+fun <T : Any> MMKVStoreOwner.mmkvObject(key: String, codec: MMKVCodec<T>) =
+  MMKVObjectProperty<T?>(key, codec as MMKVCodec<T?>, null)
+
+fun <T : Any> MMKVStoreOwner.mmkvObject(key: String, codec: MMKVCodec<T>, default: T) =
+  MMKVObjectProperty(key, codec, default)
@@ -0,0 +1,369 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.extensions.mmkv
+
+import android.os.Handler
+import android.os.SystemClock
+import android.util.Log
+import com.tencent.mmkv.MMKV
+import com.tencent.mmkv.MMKVContentChangeNotification
+import com.weiwei.task.scheduler.TaskScheduler
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 同一个 mmapID 的 MMKV 共用的状态：写入版本号、事务、write-behind 队列、key 的观察者和跨进程修改检查
+ * 版本号在写入开始和结束时各加一（写入期间为奇数），收到其他进程修改通知时加二，
+ * 读取前后版本号相同且为偶数时，读到的值没有被写入打断，缓存的值也只在版本号相同时有效
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+internal class MMKVStore private constructor(val kv: MMKV, val mmapID: String) {
+  val lock = Any()
+
+  @Volatile
+  var version: Long = 0L
+
+  @Volatile
+  private var lastCheckMillis = 0L
+
+  /**
+   * 正在进行中的事务数，为 0 时读取不需要查询 ThreadLocal
+   */
+  private val activeTransactions = AtomicInteger()
+  private val transaction = ThreadLocal<Transaction>()
+
+  /**
+   * write-behind 模式下还没有写入 MMKV 的值，同一个 key 只保留最后一次，
+   * 写入 MMKV 之后才从这里移除，读取时先查这里，所以任何时候都能读到最新的值
+   */
+  private val pendingWrites = ConcurrentHashMap<String, PendingWrite>()
+  private val persistScheduled = AtomicBoolean(false)
+  /**
+   * 按 key 注册的观察者，observerCount 为 0 时写入不需要查询
+   */
+  private val keyObservers = HashMap<String, ArrayList<KeyObserver>>()
+
+  @Volatile
+  private var observerCount = 0
+
+  private val persistRunnable = Runnable {
+    persistScheduled.set(false)
+    persistPending()
+  }
+
+  /**
+   * 在 lock 中执行写入，写入期间版本号为奇数
+   *
+   * @return 写入完成后的版本号
+   */
+  inline fun write(block: (MMKV) -> Unit): Long {
+    synchronized(lock) {
+      version++
+      try {
+        block(kv)
+      } finally {
+        version++
+      }
+      return version
+    }
+  }
+
+  /**
+   * @return 当前线程在这个 MMKV 上的事务，没有时返回 null
+   */
+  fun currentTransaction(): Transaction? =
+    if (activeTransactions.get() == 0) null else transaction.get()
+
+  fun <T> runInTransaction(block: () -> T): T {
+    if (transaction.get() != null) {
+      // 嵌套的事务合并到外层一起提交
+      return block()
+    }
+    val tx = Transaction()
+    transaction.set(tx)
+    activeTransactions.incrementAndGet()
+    val result: T
+    try {
+      result = block()
+    } finally {
+      activeTransactions.decrementAndGet()
+      transaction.remove()
+    }
+    commit(tx)
+    return result
+  }
+
+  private fun commit(tx: Transaction) {
+    if (tx.writes.isEmpty()) {
+      return
+    }
+    if (tx.writeBehind) {
+      // 在 lock 中一起放入 pendingWrites，加锁读取的线程不会看到只放入一部分的状态
+      write {
+        pendingWrites.putAll(tx.writes)
+      }
+      schedulePersist()
+    } else {
+      write { kv ->
+        for ((key, pending) in tx.writes) {
+          discardPending(key)
+          pending.property.encodeAny(kv, pending.value)
+        }
+      }
+      kv.sync()
+    }
+    if (observerCount > 0) {
+      for (key in tx.writes.keys) {
+        notifyChanged(key)
+      }
+    }
+  }
+
+  /**
+   * @return key 还没有写入 MMKV 的值，没有时返回 null
+   */
+  fun pendingWrite(key: String): PendingWrite? =
+    if (pendingWrites.isEmpty()) null else pendingWrites[key]
+
+  /**
+   * 同步写入前在 lock 中调用，丢弃同一个 key 还没写入的旧值，避免之后被后台队列覆盖
+   */
+  fun discardPending(key: String) {
+    if (pendingWrites.isNotEmpty()) {
+      pendingWrites.remove(key)
+    }
+  }
+
+  /**
+   * write-behind 写入：先更新内存中的值，再由后台队列写入 MMKV
+   *
+   * @return 写入后的版本号
+   */
+  fun writeBehind(key: String, pending: PendingWrite): Long {
+    val version = write {
+      pendingWrites[key] = pending
+    }
+    schedulePersist()
+    return version
+  }
+
+  /**
+   * 提交失败时值仍然保留在 pendingWrites 中，读取不受影响，下一次写入或 flush 时再写入 MMKV，
+   * 所以这里不抛出异常，属性赋值不会因为后台队列失败而崩溃
+   */
+  private fun schedulePersist() {
+    if (!persistScheduled.compareAndSet(false, true)) {
+      return
+    }
+    val posted = try {
+      writeBehindHandler.post(persistRunnable)
+    } catch (t: Throwable) {
+      Log.e(TAG, "schedule persist error $t")
+      false
+    }
+    if (!posted) {
+      persistScheduled.set(false)
+    }
+  }
+
+  /**
+   * 把 pendingWrites 写入 MMKV，后台队列和 flush 都会调用，在 lock 中执行，同一时间只有一个线程在写
+   * 写入的值和内存中的值相同，读取结果不变，所以不修改版本号；先写入再移除，移除时如果已经有更新的值则保留到下一次
+   */
+  fun persistPending() {
+    if (pendingWrites.isEmpty()) {
+      return
+    }
+    synchronized(lock) {
+      for ((key, pending) in pendingWrites) {
+        try {
+          pending.property.encodeAny(kv, pending.value)
+        } catch (t: Throwable) {
+          Log.e(TAG, "persist $key error $t")
+        }
+        pendingWrites.remove(key, pending)
+      }
+    }
+  }
+
+  /**
+   * 同步写入所有 write-behind 的值并 sync 到磁盘，用于进程可能被杀死前
+   */
+  fun flush() {
+    persistPending()
+    kv.sync()
+  }
+
+  /**
+   * 缓存模式下读取不再访问 MMKV，其他进程的修改只有在调用 checkContentChangedByOuterProcess 时才会通知，
+   * 这里按 CHECK_INTERVAL_MILLIS 节流检查
+   */
+  fun checkContentChanged() {
+    val now = SystemClock.uptimeMillis()
+    if (now - lastCheckMillis >= CHECK_INTERVAL_MILLIS) {
+      lastCheckMillis = now
+      kv.checkContentChangedByOuterProcess()
+    }
+  }
+
+  fun onContentChangedByOuterProcess() {
+    synchronized(lock) {
+      version += 2
+    }
+    // 通知里没有具体的 key，所有观察者都重新读取一次
+    if (observerCount > 0) {
+      MMKVChangeDispatcher.post(this, null)
+    }
+  }
+
+  fun addObserver(key: String, observer: KeyObserver) {
+    synchronized(keyObservers) {
+      keyObservers.getOrPut(key) { ArrayList() }.add(observer)
+      observerCount++
+    }
+  }
+
+  fun removeObserver(key: String, observer: KeyObserver) {
+    synchronized(keyObservers) {
+      val observers = keyObservers[key] ?: return
+      if (observers.remove(observer)) {
+        observerCount--
+        if (observers.isEmpty()) {
+          keyObservers.remove(key)
+        }
+      }
+    }
+  }
+
+  /**
+   * 写入后调用，同一帧内的多次修改合并为一次通知
+   */
+  fun notifyChanged(key: String) {
+    if (observerCount > 0) {
+      MMKVChangeDispatcher.post(this, key)
+    }
+  }
+
+  /**
+   * 在主线程通知观察者
+   *
+   * @param keys 修改过的 key，null 表示全部
+   */
+  fun dispatchChanged(keys: Set<String>?) {
+    val observers = ArrayList<KeyObserver>()
+    synchronized(keyObservers) {
+      if (keys == null) {
+        for (list in keyObservers.values) {
+          observers.addAll(list)
+        }
+      } else {
+        for (key in keys) {
+          keyObservers[key]?.let { observers.addAll(it) }
+        }
+      }
+    }
+    for (observer in observers) {
+      observer.onKeyChanged()
+    }
+  }
+
+  /**
+   * 事务中的写入，同一个 key 只保留最后一次
+   */
+  class Transaction {
+    val writes = LinkedHashMap<String, PendingWrite>()
+
+    /**
+     * 事务中有 write-behind owner 的写入时，提交也走 write-behind
+     */
+    var writeBehind = false
+  }
+
+  class PendingWrite(val property: MMKVProperty<*>, val value: Any?)
+
+  companion object {
+    private const val TAG = "MMKVStore"
+    private const val CHECK_INTERVAL_MILLIS = 500L
+
+    private const val WRITE_BEHIND_THREAD = "mmkv-write-behind"
+
+    /**
+     * 所有 MMKV 共用的 write-behind 队列，使用单独的后台 Looper 而不是 IO 线程池：
+     * IO 线程池满时的拒绝策略会丢弃任务或者在调用线程（通常是主线程）执行，都不适合写入
+     * 第一次使用 write-behind 时创建，之后一直持有
+     */
+    private val writeBehindHandler: Handler by lazy {
+      Handler(TaskScheduler.acquireLooper(WRITE_BEHIND_THREAD))
+    }
+
+    private val stores = HashMap<String, MMKVStore>()
+
+    val defaultKv: MMKV by lazy { MMKV.defaultMMKV() }
+
+    private val contentChangeNotification = object : MMKVContentChangeNotification {
+      override fun onContentChangedByOuterProcess(mmapID: String) {
+        dispatchContentChanged(mmapID)
+      }
+    }
+
+    @Volatile
+    private var notificationRegistered = false
+
+    fun of(kv: MMKV): MMKVStore {
+      val mmapID = kv.mmapID()
+      synchronized(stores) {
+        stores[mmapID]?.let { return it }
+        return MMKVStore(kv, mmapID).also { stores[mmapID] = it }
+      }
+    }
+
+    fun registerContentChangeNotify() {
+      synchronized(stores) {
+        if (notificationRegistered) {
+          return
+        }
+        notificationRegistered = true
+      }
+      MMKV.registerContentChangeNotify(contentChangeNotification)
+    }
+
+    fun dispatchContentChanged(mmapID: String) {
+      synchronized(stores) { stores[mmapID] }?.onContentChangedByOuterProcess()
+    }
+  }
+}
+
+/**
+ * 多进程使用 kvCacheEnabled、mmkvObject 或者可观察的 key 时，需要知道其他进程的修改，二选一：
+ * - 应用没有自己的 MMKVContentChangeNotification 时，在 MMKV 初始化之后调用 [registerMMKVContentChangeNotify]
+ * - 应用已经注册了自己的，在它的回调中调用这个方法
+ *
+ * 两者都没有时，缓存和观察者不会因为其他进程的修改更新，单进程应用不需要处理
+ */
+fun dispatchMMKVContentChanged(mmapID: String) {
+  MMKVStore.dispatchContentChanged(mmapID)
+}
+
+/**
+ * 让 mmkv-ktx 通过 MMKV.registerContentChangeNotify 接收其他进程的修改，见 [dispatchMMKVContentChanged]
+ * MMKV 全局只有一个通知，调用后会替换应用之前注册的 MMKVContentChangeNotification，已经有自己的通知时不要调用，
+ * 改为在自己的回调中调用 [dispatchMMKVContentChanged]。mmkv-ktx 不会自动注册
+ */
+fun registerMMKVContentChangeNotify() {
+  MMKVStore.registerContentChangeNotify()
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.extensions.mmkv
+
+/**
+ * 在事务中批量写入属性：block 中的写入先缓存在内存中，block 正常结束后一起写入 MMKV 并只 sync 一次，
+ * 同一个 key 多次写入只写最后一次。block 抛出异常时全部丢弃。
+ * block 中读取属性能读到事务中写入的值；其他线程通过属性读取时，要么看到全部写入，要么一个都看不到
+ *
+ * ```kotlin
+ * Settings.kvTransaction {
+ *   Settings.fontSize = 16
+ *   Settings.theme = "dark"
+ * }
+ * ```
+ *
+ * 事务只对当前线程、当前 owner 的 kv 生效，直接调用 kv.encode 的写入不在事务中；
+ * [MMKVStoreOwner.kvWriteBehind] 开启时提交只更新内存中的值，之后由后台队列写入 MMKV
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+fun <T> MMKVStoreOwner.kvTransaction(block: () -> T): T =
+  MMKVStore.of(kv).runInTransaction(block)
+
+/**
+ * write-behind 模式下的写入屏障：在当前线程同步写入所有还没写入的值并 sync 到磁盘，
+ * 用于进程可能被杀死之前，比如 Activity#onStop、崩溃处理、退出登录
+ */
+fun MMKVStoreOwner.kvFlush() {
+  MMKVStore.of(kv).flush()
+}
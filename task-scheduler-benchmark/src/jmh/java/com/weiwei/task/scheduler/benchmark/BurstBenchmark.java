@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 启动时的突发提交：一次性提交一批会阻塞的任务（模拟 IO），统计整批完成耗时的分布（p99/p999 即尾延迟），
+ * 以及线程池新建的线程数和最多同时存活的线程数
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BurstBenchmark {
+
+  @Param
+  public PoolConfig config;
+
+  @Param({"100", "1000"})
+  public int burstSize;
+
+  @Param({"200"})
+  public int blockMicros;
+
+  private PoolConfig.Pools pools;
+  private MainThreadStandIn main;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class ThreadCounters {
+    /**
+     * 本轮迭代中新建的线程数
+     */
+    public long threadsCreated;
+    /**
+     * 本轮迭代中观察到的最大线程数
+     */
+    public long peakThreads;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      threadsCreated = 0;
+      peakThreads = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    pools = config.create();
+    main = new MainThreadStandIn();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    pools.shutdown();
+    main.quit();
+  }
+
+  @Benchmark
+  public void burst(ThreadCounters counters) throws InterruptedException {
+    int createdBefore = pools.createdThreads.get();
+    final CountDownLatch delivered = new CountDownLatch(burstSize);
+    final Runnable onSuccess = new Runnable() {
+      @Override
+      public void run() {
+        delivered.countDown();
+      }
+    };
+    final long blockNanos = TimeUnit.MICROSECONDS.toNanos(blockMicros);
+    for (int i = 0; i < burstSize; i++) {
+      pools.parallel.execute(new Runnable() {
+        @Override
+        public void run() {
+          LockSupport.parkNanos(blockNanos);
+          main.post(onSuccess);
+        }
+      });
+    }
+    counters.peakThreads = Math.max(counters.peakThreads, liveThreads());
+    delivered.await();
+    counters.threadsCreated += pools.createdThreads.get() - createdBefore;
+  }
+
+  private long liveThreads() {
+    long count = 0;
+    if (pools.parallel instanceof java.util.concurrent.ThreadPoolExecutor) {
+      count += ((java.util.concurrent.ThreadPoolExecutor) pools.parallel).getPoolSize();
+    } else if (pools.parallel instanceof java.util.concurrent.ForkJoinPool) {
+      count += ((java.util.concurrent.ForkJoinPool) pools.parallel).getPoolSize();
+    }
+    if (pools.fallback != null) {
+      count += pools.fallback.getPoolSize();
+    }
+    return count;
+  }
+}
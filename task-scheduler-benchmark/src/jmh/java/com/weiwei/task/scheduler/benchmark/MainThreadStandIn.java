@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 代替主线程 Looper/Handler 的单线程执行器，任务结果和 Task 一样投递到这里
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class MainThreadStandIn {
+  private final ExecutorService looper = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      return new Thread(r, "main-stand-in");
+    }
+  });
+
+  void post(Runnable runnable) {
+    looper.execute(runnable);
+  }
+
+  void quit() throws InterruptedException {
+    looper.shutdownNow();
+    looper.awaitTermination(10, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 和 TaskExecutor 相同的线程池配置，TaskExecutor 依赖 Android，这里在 JVM 上按同样的参数重新创建
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public enum PoolConfig {
+  /**
+   * 1.1.0 的配置：并行线程池队列满了之后交给无上限的 timeout 线程池
+   */
+  UNBOUNDED_FALLBACK {
+    @Override
+    Pools create() {
+      AtomicInteger created = new AtomicInteger();
+      ThreadPoolExecutor fallback = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE, TimeUnit.SECONDS,
+          new SynchronousQueue<Runnable>(), threadFactory("timeoutThread #", created));
+      return new Pools(createParallel(fallback, created), fallback, created);
+    }
+  },
+  /**
+   * 并行线程池队列满了之后交给有上限的 IO 线程池，和 TaskSchedulerConfig 的默认值相同（32 线程，256 队列，SPILL）
+   */
+  BOUNDED_FALLBACK {
+    @Override
+    Pools create() {
+      AtomicInteger created = new AtomicInteger();
+      ThreadPoolExecutor fallback = new BoundedFallback(threadFactory("timeoutThread #", created));
+      return new Pools(createParallel(fallback, created), fallback, created);
+    }
+  },
+  /**
+   * work-stealing 模式的并行线程池
+   */
+  WORK_STEALING {
+    @Override
+    Pools create() {
+      final AtomicInteger created = new AtomicInteger();
+      ForkJoinPool pool = new ForkJoinPool(Math.max(2, CPU_COUNT), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+          created.incrementAndGet();
+          return ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        }
+      }, null, true);
+      return new Pools(pool, null, created);
+    }
+  };
+
+  static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+  static final int CORE_POOL_SIZE = Math.max(2, Math.min(CPU_COUNT + 1, 4));
+  static final int MAXIMUM_POOL_SIZE = CORE_POOL_SIZE * 2 + 1;
+  static final int QUEUE_CAPACITY = 256;
+  /**
+   * TaskSchedulerConfig 中 IO 线程池的默认值
+   */
+  static final int IO_MAX_THREADS = 32;
+  static final int IO_QUEUE_CAPACITY = 256;
+  static final long KEEP_ALIVE = 60L;
+
+  abstract Pools create();
+
+  private static ThreadPoolExecutor createParallel(final ThreadPoolExecutor fallback, AtomicInteger created) {
+    return new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), threadFactory("TaskExecutor #", created), new RejectedExecutionHandler() {
+      @Override
+      public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        fallback.execute(r);
+      }
+    });
+  }
+
+  private static ThreadFactory threadFactory(final String name, final AtomicInteger created) {
+    return new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        return new Thread(r, name + created.incrementAndGet());
+      }
+    };
+  }
+
+  /**
+   * 按 BoundedExecutor 的 SPILL 策略在 JVM 上重新实现：线程和队列都满了之后交给单独的溢出线程按提交顺序执行，
+   * 溢出线程计入线程数，关闭时一起关闭
+   */
+  static final class BoundedFallback extends ThreadPoolExecutor {
+    private final SpillHandler spill;
+
+    BoundedFallback(ThreadFactory threadFactory) {
+      this(threadFactory, new SpillHandler(threadFactory));
+    }
+
+    private BoundedFallback(ThreadFactory threadFactory, SpillHandler spill) {
+      super(IO_MAX_THREADS, IO_MAX_THREADS, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(IO_QUEUE_CAPACITY),
+          threadFactory, spill);
+      allowCoreThreadTimeOut(true);
+      this.spill = spill;
+    }
+
+    @Override
+    public int getPoolSize() {
+      return super.getPoolSize() + spill.getPoolSize();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      spill.shutdownNow();
+      return super.shutdownNow();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return super.awaitTermination(timeout, unit) && spill.awaitTermination(timeout, unit);
+    }
+  }
+
+  private static final class SpillHandler implements RejectedExecutionHandler {
+    private final ThreadFactory threadFactory;
+    private ThreadPoolExecutor spillExecutor;
+
+    SpillHandler(ThreadFactory threadFactory) {
+      this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException("Executor is shutdown");
+      }
+      ThreadPoolExecutor spill;
+      synchronized (this) {
+        if (spillExecutor == null) {
+          spillExecutor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+          spillExecutor.allowCoreThreadTimeOut(true);
+        }
+        spill = spillExecutor;
+      }
+      spill.execute(r);
+    }
+
+    synchronized int getPoolSize() {
+      return spillExecutor == null ? 0 : spillExecutor.getPoolSize();
+    }
+
+    synchronized void shutdownNow() {
+      if (spillExecutor != null) {
+        spillExecutor.shutdownNow();
+      }
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      ThreadPoolExecutor spill;
+      synchronized (this) {
+        spill = spillExecutor;
+      }
+      return spill == null || spill.awaitTermination(timeout, unit);
+    }
+  }
+
+  static final class Pools {
+    final ExecutorService parallel;
+    final ThreadPoolExecutor fallback;
+    final AtomicInteger createdThreads;
+
+    Pools(ExecutorService parallel, ThreadPoolExecutor fallback, AtomicInteger createdThreads) {
+      this.parallel = parallel;
+      this.fallback = fallback;
+      this.createdThreads = createdThreads;
+    }
+
+    void shutdown() throws InterruptedException {
+      parallel.shutdownNow();
+      parallel.awaitTermination(10, TimeUnit.SECONDS);
+      if (fallback != null) {
+        fallback.shutdownNow();
+        fallback.awaitTermination(10, TimeUnit.SECONDS);
+      }
+    }
+  }
+}
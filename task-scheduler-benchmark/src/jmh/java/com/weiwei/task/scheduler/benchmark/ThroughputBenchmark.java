@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 小 CPU 任务的吞吐量：提交一批任务，每个任务完成后把结果投递到主线程，全部投递完成算一次调用
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ThroughputBenchmark {
+  private static final int BATCH = 1000;
+
+  @Param
+  public PoolConfig config;
+
+  @Param({"100", "10000"})
+  public int workTokens;
+
+  private PoolConfig.Pools pools;
+  private MainThreadStandIn main;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    pools = config.create();
+    main = new MainThreadStandIn();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    pools.shutdown();
+    main.quit();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void tasks() throws InterruptedException {
+    final CountDownLatch delivered = new CountDownLatch(BATCH);
+    final Runnable onSuccess = new Runnable() {
+      @Override
+      public void run() {
+        delivered.countDown();
+      }
+    };
+    for (int i = 0; i < BATCH; i++) {
+      pools.parallel.execute(new Runnable() {
+        @Override
+        public void run() {
+          Blackhole.consumeCPU(workTokens);
+          main.post(onSuccess);
+        }
+      });
+    }
+    delivered.await();
+  }
+}
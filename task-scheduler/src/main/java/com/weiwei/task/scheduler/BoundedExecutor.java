@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有上限的 IO 线程池：线程数达到 maxThreads 之前优先创建线程，之后进入等待队列，队列满了按照 {@link Policy} 处理
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class BoundedExecutor extends ThreadPoolExecutor {
+
+  /**
+   * 线程和队列都满了之后的处理策略
+   */
+  public enum Policy {
+    /**
+     * 交给单独的溢出线程按提交顺序执行，溢出线程空闲后自动退出。不会阻塞或占用提交任务的线程
+     */
+    SPILL,
+    /**
+     * 在提交任务的线程中直接执行。提交线程有 Looper（主线程、HandlerThread）或者是时间轮线程时按 {@link #SPILL} 处理，
+     * 不会在这些线程中执行 IO 任务
+     */
+    CALLER_RUNS,
+    /**
+     * 丢弃队列中最早的任务（会被取消）并重新提交当前任务
+     */
+    DROP_OLDEST,
+    /**
+     * 阻塞提交任务的线程等待队列空位，超时后抛出 RejectedExecutionException
+     */
+    BLOCK
+  }
+
+  private final AtomicInteger runningCount = new AtomicInteger();
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final TaskMonitor monitor;
+
+  BoundedExecutor(int maxThreads, int queueCapacity, long keepAliveSeconds, @NonNull Policy policy, long blockTimeoutMillis,
+      @NonNull ThreadFactory threadFactory, @NonNull TaskMonitor monitor) {
+    super(maxThreads, maxThreads, keepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueCapacity), threadFactory,
+        new BackpressureHandler(policy, blockTimeoutMillis, keepAliveSeconds, threadFactory));
+    allowCoreThreadTimeOut(true);
+    this.monitor = monitor;
+  }
+
+  @Override
+  protected void beforeExecute(Thread t, Runnable r) {
+    runningCount.incrementAndGet();
+    super.beforeExecute(t, r);
+  }
+
+  @Override
+  protected void afterExecute(Runnable r, Throwable t) {
+    super.afterExecute(r, t);
+    runningCount.decrementAndGet();
+  }
+
+  /**
+   * @return 正在执行任务的线程数
+   */
+  public int getRunningCount() {
+    return runningCount.get();
+  }
+
+  /**
+   * @return 等待队列中的任务数
+   */
+  public int getQueueDepth() {
+    return getQueue().size();
+  }
+
+  /**
+   * @return 线程和队列都满了的次数，无论最终采用哪种策略都会计数
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /**
+   * 取消被丢弃的任务，内部任务通过 {@link Droppable} 释放自己的状态
+   */
+  static void cancelDropped(Runnable dropped) {
+    if (dropped != null) {
+      dropped = TaskMonitor.unwrap(dropped);
+    }
+    if (dropped instanceof Droppable) {
+      ((Droppable) dropped).onDropped();
+    } else if (dropped instanceof Future) {
+      ((Future<?>) dropped).cancel(false);
+    } else if (dropped instanceof Task) {
+      ((Task<?>) dropped).cancel();
+    }
+  }
+
+  private static final class BackpressureHandler implements RejectedExecutionHandler {
+    private final Policy policy;
+    private final long blockTimeoutMillis;
+    private final long keepAliveSeconds;
+    private final ThreadFactory threadFactory;
+
+    private ThreadPoolExecutor spillExecutor;
+
+    BackpressureHandler(Policy policy, long blockTimeoutMillis, long keepAliveSeconds, ThreadFactory threadFactory) {
+      this.policy = policy;
+      this.blockTimeoutMillis = blockTimeoutMillis;
+      this.keepAliveSeconds = keepAliveSeconds;
+      this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      if (executor.isShutdown()) {
+        throw new RejectedExecutionException("Executor is shutdown");
+      }
+      BoundedExecutor bounded = (BoundedExecutor) executor;
+      bounded.rejectedCount.incrementAndGet();
+      bounded.monitor.onReject(r, TaskMonitor.EXECUTOR_IO);
+
+      switch (policy) {
+        case DROP_OLDEST:
+          BoundedExecutor.cancelDropped(executor.getQueue().poll());
+          executor.execute(r);
+          break;
+        case BLOCK:
+          try {
+            if (!executor.getQueue().offer(r, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+              throw new RejectedExecutionException("Queue is still full after " + blockTimeoutMillis + "ms");
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for queue", e);
+          }
+          break;
+        case CALLER_RUNS:
+          if (Looper.myLooper() == null && !TimerWheel.isTimerThread()) {
+            r.run();
+          } else {
+            spill(r);
+          }
+          break;
+        case SPILL:
+        default:
+          spill(r);
+          break;
+      }
+    }
+
+    private void spill(Runnable r) {
+      ThreadPoolExecutor executor;
+      synchronized (this) {
+        if (spillExecutor == null) {
+          // 队列不设上限：能走到这里说明 IO 线程池已经饱和，溢出线程只保证任务最终执行，不再做背压
+          spillExecutor = new ThreadPoolExecutor(1, 1, keepAliveSeconds, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+              threadFactory);
+          spillExecutor.allowCoreThreadTimeOut(true);
+        }
+        executor = spillExecutor;
+      }
+      executor.execute(r);
+    }
+  }
+}
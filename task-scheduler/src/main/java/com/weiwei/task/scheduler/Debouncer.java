@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import java.util.concurrent.Executor;
+
+/**
+ * 防抖：最后一次 {@link #call()} 之后 delayMillis 内没有新的调用时执行一次 action，适合输入搜索等场景
+ * call 只更新时间戳，定时器在每个 delay 周期内最多调度一次，不会每次调用都 removeCallbacks + postDelayed，也不分配对象
+ *
+ * <pre>
+ * Debouncer search = new Debouncer(300L, TaskScheduler.parallelExecutor(), searchRunnable);
+ * editText.addTextChangedListener(... search.call() ...);
+ * </pre>
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class Debouncer {
+  private final long delayMillis;
+  private final Runnable action;
+  private final DispatchTarget target;
+
+  private long lastCallMillis;
+  private boolean armed;
+
+  private final Runnable check = new Runnable() {
+    @Override
+    public void run() {
+      onTimer();
+    }
+  };
+
+  /**
+   * action 在主线程执行
+   */
+  public Debouncer(long delayMillis, @NonNull Runnable action) {
+    this(delayMillis, TaskScheduler.mainHandler(), action);
+  }
+
+  public Debouncer(long delayMillis, @NonNull Handler handler, @NonNull Runnable action) {
+    this.delayMillis = delayMillis;
+    this.action = action;
+    this.target = new DispatchTarget(handler, check);
+  }
+
+  /**
+   * @param executor 执行 action 的线程池，如 {@link TaskScheduler#parallelExecutor()}
+   */
+  public Debouncer(long delayMillis, @NonNull Executor executor, @NonNull Runnable action) {
+    this.delayMillis = delayMillis;
+    this.action = action;
+    this.target = new DispatchTarget(executor, check);
+  }
+
+  /**
+   * 重新开始计时，delayMillis 后没有新的调用时执行 action
+   */
+  public void call() {
+    synchronized (this) {
+      lastCallMillis = SystemClock.uptimeMillis();
+      if (armed) {
+        return;
+      }
+      armed = true;
+      target.schedule(delayMillis);
+    }
+  }
+
+  /**
+   * 取消还没有执行的 action
+   */
+  public void cancel() {
+    synchronized (this) {
+      armed = false;
+      target.cancelSchedule();
+    }
+  }
+
+  private void onTimer() {
+    synchronized (this) {
+      if (!armed) {
+        return;
+      }
+      long elapsed = SystemClock.uptimeMillis() - lastCallMillis;
+      if (elapsed < delayMillis) {
+        // 等待期间有新的调用，按最后一次调用的时间重新调度
+        target.schedule(delayMillis - elapsed);
+        return;
+      }
+      armed = false;
+    }
+    target.dispatch(action);
+  }
+}
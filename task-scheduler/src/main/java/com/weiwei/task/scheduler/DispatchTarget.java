@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import java.util.concurrent.Executor;
+
+/**
+ * Debouncer、Throttler、RateLimiter 的执行目标：Handler 或者线程池
+ * Handler 目标的定时用 postDelayed，线程池目标的定时用共用的时间轮，定时回调都是预先创建的 Runnable，重复调度不分配对象
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class DispatchTarget {
+  private final Handler handler;
+  private final Executor executor;
+  private final Runnable timerCallback;
+  private TimerWheel.Timeout timeout;
+
+  /**
+   * @param timerCallback {@link #schedule(long)} 到期时执行，Handler 目标在 Handler 线程，线程池目标在时间轮线程
+   */
+  DispatchTarget(@NonNull Handler handler, @NonNull Runnable timerCallback) {
+    this.handler = handler;
+    this.executor = null;
+    this.timerCallback = timerCallback;
+  }
+
+  DispatchTarget(@NonNull Executor executor, @NonNull Runnable timerCallback) {
+    this.handler = null;
+    this.executor = executor;
+    this.timerCallback = timerCallback;
+  }
+
+  /**
+   * 调用方负责同步
+   */
+  void schedule(long delayMillis) {
+    if (handler != null) {
+      handler.removeCallbacks(timerCallback);
+      handler.postDelayed(timerCallback, delayMillis);
+      return;
+    }
+    TimerWheel timer = TaskExecutor.get().getTimer();
+    if (timeout == null) {
+      timeout = timer.newTimeout(timerCallback);
+    }
+    timer.reschedule(timeout, delayMillis);
+  }
+
+  /**
+   * 调用方负责同步
+   */
+  void cancelSchedule() {
+    if (handler != null) {
+      handler.removeCallbacks(timerCallback);
+    } else if (timeout != null) {
+      timeout.cancel();
+    }
+  }
+
+  /**
+   * 在目标上执行 action，已经在 Handler 线程时直接执行
+   */
+  void dispatch(@NonNull Runnable action) {
+    if (handler == null) {
+      executor.execute(action);
+    } else if (Looper.myLooper() == handler.getLooper()) {
+      action.run();
+    } else {
+      handler.post(action);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+/**
+ * 提交到线程池的内部任务，被 {@link BoundedExecutor.Policy#DROP_OLDEST} 丢弃时回调，用来释放运行状态或者通知等待方
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+interface Droppable {
+  /**
+   * 任务已经从队列中移除，不会再执行
+   */
+  void onDropped();
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import android.os.Build;
+import android.os.Process;
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ForkJoinPool 相关的实现都放在这里，避免低版本系统加载到不存在的类
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+final class ForkJoinSupport {
+
+  private ForkJoinSupport() {
+  }
+
+  @NonNull
+  static ForkJoinPool createPool(int parallelism, final String name) {
+    ForkJoinPool.ForkJoinWorkerThreadFactory factory = new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger(1);
+
+      @Override
+      public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = new BackgroundWorkerThread(pool);
+        thread.setName(name + count.getAndIncrement());
+        return thread;
+      }
+    };
+    // asyncMode = true: 从不 join 的 execute 任务按 FIFO 执行，和 ThreadPoolExecutor 的顺序保持一致
+    return new ForkJoinPool(parallelism, factory, null, true);
+  }
+
+  /**
+   * 在并行线程池中拆分执行 SplitTask，当前线程就是池中的 worker 时直接在本地队列 fork，避免再次入队
+   */
+  static <T, R> R invoke(@NonNull SplitTask<T, R> task, @NonNull List<T> items, int threshold) throws InterruptedException {
+    ForkJoinPool pool = (ForkJoinPool) TaskExecutor.get().getParallelExecutor();
+    SliceTask<T, R> root = new SliceTask<>(task, items, threshold, 0, items.size());
+    try {
+      Thread current = Thread.currentThread();
+      if (current instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) current).getPool() == pool) {
+        return root.invoke();
+      }
+      return pool.invoke(root);
+    } catch (RuntimeException e) {
+      // ForkJoinTask 跨线程抛出时可能会包装一层，需要沿着 cause 查找
+      for (Throwable t = e; t != null; t = t.getCause()) {
+        if (t instanceof InterruptedSignal) {
+          throw (InterruptedException) t.getCause();
+        }
+      }
+      throw e;
+    }
+  }
+
+  private static final class BackgroundWorkerThread extends ForkJoinWorkerThread {
+    BackgroundWorkerThread(ForkJoinPool pool) {
+      super(pool);
+    }
+
+    @Override
+    protected void onStart() {
+      super.onStart();
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+    }
+  }
+
+  private static final class SliceTask<T, R> extends RecursiveTask<R> {
+    private final SplitTask<T, R> task;
+    private final List<T> items;
+    private final int threshold;
+    private final int from;
+    private final int to;
+
+    SliceTask(SplitTask<T, R> task, List<T> items, int threshold, int from, int to) {
+      this.task = task;
+      this.items = items;
+      this.threshold = threshold;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected R compute() {
+      try {
+        if (task.isCanceled()) {
+          throw new InterruptedException("SplitTask canceled");
+        }
+        if (to - from <= threshold) {
+          return task.compute(items.subList(from, to));
+        }
+        int middle = (from + to) >>> 1;
+        SliceTask<T, R> left = new SliceTask<>(task, items, threshold, from, middle);
+        SliceTask<T, R> right = new SliceTask<>(task, items, threshold, middle, to);
+        left.fork();
+        R rightResult = right.compute();
+        return task.merge(left.join(), rightResult);
+      } catch (InterruptedException e) {
+        throw new InterruptedSignal(e);
+      }
+    }
+  }
+
+  /**
+   * RecursiveTask#compute 不能抛出受检异常，用来把 InterruptedException 带回调用线程
+   */
+  private static final class InterruptedSignal extends RuntimeException {
+    InterruptedSignal(InterruptedException cause) {
+      super(cause);
+    }
+  }
+}
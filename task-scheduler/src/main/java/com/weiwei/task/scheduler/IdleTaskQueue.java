@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 主线程空闲时执行的任务队列，基于 {@link MessageQueue.IdleHandler}
+ * 每次空闲最多执行 budgetMillis 的任务，剩余任务等到下一次空闲再执行，不会和滑动、绘制等消息抢占主线程
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class IdleTaskQueue implements MessageQueue.IdleHandler {
+  private static final String TAG = "IdleTaskQueue";
+
+  private final long budgetMillis;
+  private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean registered = new AtomicBoolean(false);
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  private final Runnable register = new Runnable() {
+    @Override
+    public void run() {
+      Looper.myQueue().addIdleHandler(IdleTaskQueue.this);
+    }
+  };
+
+  /**
+   * 空消息，处理完之后 MessageQueue 重新进入空闲，再次回调 IdleHandler
+   */
+  private final Runnable wakeUp = new Runnable() {
+    @Override
+    public void run() {
+    }
+  };
+
+  IdleTaskQueue(long budgetMillis) {
+    this.budgetMillis = budgetMillis;
+  }
+
+  void add(@NonNull Runnable task) {
+    tasks.offer(task);
+    if (registered.compareAndSet(false, true)) {
+      // IdleHandler 只能在主线程通过 Looper.myQueue() 注册（getQueue 需要 API 23）
+      if (TaskScheduler.isMainThread()) {
+        register.run();
+      } else {
+        TaskScheduler.runOnUIThread(register);
+      }
+    }
+  }
+
+  boolean remove(@NonNull Runnable task) {
+    return tasks.remove(task);
+  }
+
+  int size() {
+    return tasks.size();
+  }
+
+  @Override
+  public boolean queueIdle() {
+    long deadline = SystemClock.uptimeMillis() + budgetMillis;
+    Runnable task;
+    // 至少执行一个任务，单个任务超过预算时也能推进
+    while ((task = tasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (Throwable t) {
+        Log.e(TAG, "run idle task error " + t);
+      }
+      if (SystemClock.uptimeMillis() >= deadline) {
+        break;
+      }
+    }
+
+    if (!tasks.isEmpty()) {
+      // 保持注册，下一次空闲继续执行；MessageQueue 每次空闲只回调一次 IdleHandler，
+      // 没有其他消息时 Looper 会一直阻塞，发送一条空消息触发下一次空闲
+      mainHandler.removeCallbacks(wakeUp);
+      mainHandler.post(wakeUp);
+      return true;
+    }
+    registered.set(false);
+    // add 可能在 set(false) 之前看到 registered 为 true 而没有重新注册
+    return !tasks.isEmpty() && registered.compareAndSet(false, true);
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Printer;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * 主线程卡顿监控：通过 {@link Looper#setMessageLogging(Printer)} 统计每个主线程消息的耗时，
+ * 超过阈值时由监控线程抓取一次主线程堆栈，按消息的发送位置（callback 类名或 Handler + what）聚合
+ * 会替换主线程 Looper 原有的 Printer
+ *
+ * <pre>
+ * TaskScheduler.jankWatchdog().start(32L);
+ * ...
+ * Log.d(TAG, TaskScheduler.jankWatchdog().dump());
+ * </pre>
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class JankWatchdog {
+  private static final String THREAD_NAME = "TaskExecutor watchdog";
+  private static final int MAX_CALL_SITES = 256;
+  private static final int MAX_STACK_DEPTH = 32;
+  private static final String OTHER_CALL_SITES = "<other>";
+
+  private final HashMap<String, SlowMessage> records = new HashMap<>();
+
+  private long thresholdMillis;
+  private Handler watchdogHandler;
+  private boolean running;
+
+  /**
+   * 以下字段只在主线程写入，dispatchSequence 在监控线程读取
+   */
+  private String dispatching;
+  private long dispatchStart;
+  private volatile long dispatchSequence;
+
+  /**
+   * 监控线程抓取的堆栈和对应的消息序号
+   */
+  private volatile String sampledStack;
+  private volatile long sampledSequence = -1L;
+
+  private final Printer printer = new Printer() {
+    @Override
+    public void println(String x) {
+      if (x.startsWith(">>>>> Dispatching")) {
+        onDispatchStart(x);
+      } else if (x.startsWith("<<<<< Finished")) {
+        onDispatchEnd();
+      }
+    }
+  };
+
+  private final Runnable sampler = new Runnable() {
+    @Override
+    public void run() {
+      long sequence = dispatchSequence;
+      StackTraceElement[] stack = Looper.getMainLooper().getThread().getStackTrace();
+      StringBuilder builder = new StringBuilder();
+      for (int i = 0, depth = Math.min(stack.length, MAX_STACK_DEPTH); i < depth; i++) {
+        builder.append("\tat ").append(stack[i]).append('\n');
+      }
+      sampledStack = builder.toString();
+      sampledSequence = sequence;
+    }
+  };
+
+  JankWatchdog() {
+  }
+
+  /**
+   * 开始监控，需要在主线程调用，重复调用时更新阈值
+   *
+   * @param thresholdMillis 超过该耗时的消息被记录，建议为 2 帧左右
+   */
+  public void start(long thresholdMillis) {
+    if (!TaskScheduler.isMainThread()) {
+      throw new IllegalStateException("JankWatchdog.start must be called on main thread");
+    }
+    this.thresholdMillis = thresholdMillis;
+    if (running) {
+      return;
+    }
+    running = true;
+    watchdogHandler = new Handler(TaskScheduler.acquireLooper(THREAD_NAME, Process.THREAD_PRIORITY_FOREGROUND));
+    Looper.getMainLooper().setMessageLogging(printer);
+  }
+
+  /**
+   * 停止监控并释放监控线程，已有的记录保留，需要在主线程调用
+   */
+  public void stop() {
+    if (!TaskScheduler.isMainThread()) {
+      throw new IllegalStateException("JankWatchdog.stop must be called on main thread");
+    }
+    if (!running) {
+      return;
+    }
+    running = false;
+    Looper.getMainLooper().setMessageLogging(null);
+    watchdogHandler.removeCallbacks(sampler);
+    watchdogHandler = null;
+    dispatching = null;
+    TaskScheduler.releaseLooper(THREAD_NAME);
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * @return 慢消息记录，按总耗时降序
+   */
+  @NonNull
+  public List<SlowMessage> getSlowMessages() {
+    ArrayList<SlowMessage> result = new ArrayList<>();
+    synchronized (records) {
+      for (SlowMessage record : records.values()) {
+        result.add(record.copy());
+      }
+    }
+    Collections.sort(result, new Comparator<SlowMessage>() {
+      @Override
+      public int compare(SlowMessage left, SlowMessage right) {
+        return left.totalMillis == right.totalMillis ? 0 : (left.totalMillis > right.totalMillis ? -1 : 1);
+      }
+    });
+    return result;
+  }
+
+  public void reset() {
+    synchronized (records) {
+      records.clear();
+    }
+  }
+
+  @NonNull
+  public String dump() {
+    List<SlowMessage> messages = getSlowMessages();
+    StringBuilder builder = new StringBuilder("JankWatchdog threshold=").append(thresholdMillis).append("ms, ")
+        .append(messages.size()).append(" call sites\n");
+    for (SlowMessage message : messages) {
+      builder.append("  ").append(message.callSite).append(": count=").append(message.count)
+          .append(", total=").append(message.totalMillis).append("ms, max=").append(message.maxMillis).append("ms\n");
+      if (message.stackTrace != null) {
+        builder.append(message.stackTrace);
+      }
+    }
+    return builder.toString();
+  }
+
+  private void onDispatchStart(String log) {
+    dispatching = log;
+    dispatchStart = SystemClock.uptimeMillis();
+    dispatchSequence++;
+    Handler handler = watchdogHandler;
+    if (handler != null) {
+      handler.postDelayed(sampler, thresholdMillis);
+    }
+  }
+
+  private void onDispatchEnd() {
+    String log = dispatching;
+    if (log == null) {
+      return;
+    }
+    dispatching = null;
+    long cost = SystemClock.uptimeMillis() - dispatchStart;
+    Handler handler = watchdogHandler;
+    if (handler != null) {
+      handler.removeCallbacks(sampler);
+    }
+    if (cost < thresholdMillis) {
+      return;
+    }
+    // 只有慢消息才解析调用位置
+    String stack = sampledSequence == dispatchSequence ? sampledStack : null;
+    record(callSite(log), cost, stack);
+  }
+
+  private void record(String callSite, long cost, String stack) {
+    synchronized (records) {
+      SlowMessage record = records.get(callSite);
+      if (record == null) {
+        if (records.size() >= MAX_CALL_SITES) {
+          callSite = OTHER_CALL_SITES;
+          record = records.get(callSite);
+        }
+        if (record == null) {
+          record = new SlowMessage(callSite);
+          records.put(callSite, record);
+        }
+      }
+      record.count++;
+      record.totalMillis += cost;
+      if (cost >= record.maxMillis) {
+        record.maxMillis = cost;
+        if (stack != null) {
+          record.stackTrace = stack;
+        }
+      }
+    }
+  }
+
+  /**
+   * 日志格式为 ">>>>> Dispatching to Handler (className) {hash} callback: what"
+   * 有 callback 时取去掉 @hash 的 callback 类名，否则取 Handler 类名和 what
+   */
+  @NonNull
+  static String callSite(@NonNull String log) {
+    int start = log.indexOf("} ");
+    int end = log.lastIndexOf(": ");
+    if (start < 0 || end <= start) {
+      return log;
+    }
+    String callback = log.substring(start + 2, end);
+    if ("null".equals(callback)) {
+      int handlerStart = log.indexOf('(');
+      int handlerEnd = log.indexOf(')', handlerStart);
+      String handler = handlerStart >= 0 && handlerEnd > handlerStart ? log.substring(handlerStart + 1, handlerEnd) : "Handler";
+      return handler + " what=" + log.substring(end + 2);
+    }
+    int at = callback.lastIndexOf('@');
+    return at > 0 ? callback.substring(0, at) : callback;
+  }
+
+  /**
+   * 同一调用位置的慢消息统计
+   */
+  public static final class SlowMessage {
+    @NonNull
+    public final String callSite;
+    public int count;
+    public long totalMillis;
+    public long maxMillis;
+    /**
+     * 最慢一次消息超过阈值时抓取的主线程堆栈，消息在监控线程抓取前结束时为 null
+     */
+    @Nullable
+    public String stackTrace;
+
+    SlowMessage(@NonNull String callSite) {
+      this.callSite = callSite;
+    }
+
+    SlowMessage copy() {
+      SlowMessage copy = new SlowMessage(callSite);
+      copy.count = count;
+      copy.totalMillis = totalMillis;
+      copy.maxMillis = maxMillis;
+      copy.stackTrace = stackTrace;
+      return copy;
+    }
+  }
+}
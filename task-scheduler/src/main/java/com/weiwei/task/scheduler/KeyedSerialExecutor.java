@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import androidx.annotation.NonNull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * 按 key 串行的执行器：同一个 key 的任务按提交顺序逐个执行，不同 key 的任务在共享线程池中并行执行
+ * 只有存在等待中或执行中任务的 key 才会占用内存，key 空闲后立即释放，适合按用户、按文件等大量 key 串行写入的场景
+ *
+ * <pre>
+ * KeyedSerialExecutor&lt;String&gt; fileWriter = TaskScheduler.newKeyedSerialExecutor();
+ * fileWriter.execute(file.getPath(), saveRunnable);
+ * </pre>
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class KeyedSerialExecutor<K> {
+  private final Executor executor;
+  private final ConcurrentHashMap<Object, SerialExecutor> queues = new ConcurrentHashMap<>();
+
+  /**
+   * @param executor 实际执行任务的线程池
+   */
+  public KeyedSerialExecutor(@NonNull Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * 在 key 对应的串行队列中执行任务
+   */
+  @SuppressWarnings("unchecked")
+  public void execute(@NonNull K key, @NonNull Runnable command) {
+    for (; ; ) {
+      SerialExecutor queue = queues.get(key);
+      if (queue == null) {
+        SerialExecutor created = new SerialExecutor(executor, (KeyedSerialExecutor<Object>) this, key);
+        queue = queues.putIfAbsent(key, created);
+        if (queue == null) {
+          queue = created;
+        }
+      }
+      // 队列刚好空闲被释放时重新创建
+      if (queue.offer(command)) {
+        return;
+      }
+      queues.remove(key, queue);
+    }
+  }
+
+  /**
+   * @return 存在等待中或执行中任务的 key 的数量
+   */
+  public int getActiveKeyCount() {
+    return queues.size();
+  }
+
+  void release(Object key, SerialExecutor queue) {
+    queues.remove(key, queue);
+  }
+}
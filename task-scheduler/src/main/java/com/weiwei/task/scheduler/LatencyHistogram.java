@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的耗时直方图，按微秒取 log2 分桶，记录只有几次原子操作，百分位结果是所在桶的上界
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class LatencyHistogram {
+  /**
+   * 第 i 个桶记录 [2^i, 2^(i+1)) 微秒，最后一个桶记录超过 2^31 微秒（约 36 分钟）的值
+   */
+  private static final int BUCKET_COUNT = 32;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sumMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  void record(long nanos) {
+    long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos));
+    int index = micros == 0L ? 0 : Math.min(BUCKET_COUNT - 1, 63 - Long.numberOfLeadingZeros(micros));
+    buckets.incrementAndGet(index);
+    count.incrementAndGet();
+    sumMicros.addAndGet(micros);
+    long max;
+    while (micros > (max = maxMicros.get())) {
+      if (maxMicros.compareAndSet(max, micros)) {
+        break;
+      }
+    }
+  }
+
+  long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @param percentile 0 到 1 之间
+   * @return 百分位的近似值，单位微秒，没有记录时返回 0
+   */
+  long percentileMicros(double percentile) {
+    long total = 0L;
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = buckets.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0L) {
+      return 0L;
+    }
+    long target = Math.max(1L, (long) Math.ceil(total * percentile));
+    long seen = 0L;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        return Math.min((1L << (i + 1)) - 1, maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+  void appendTo(StringBuilder builder) {
+    long n = count.get();
+    builder.append("avg=").append(n == 0L ? 0L : sumMicros.get() / n)
+        .append("us, p50=").append(percentileMicros(0.5))
+        .append("us, p90=").append(percentileMicros(0.9))
+        .append("us, p99=").append(percentileMicros(0.99))
+        .append("us, max=").append(maxMicros.get()).append("us");
+  }
+}
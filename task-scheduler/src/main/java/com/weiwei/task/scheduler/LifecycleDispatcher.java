@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 每个 LifecycleOwner 只注册一个 observer，按目标事件把 {@link LifecycleRunnable} 串成侵入式双向链表，
+ * 添加和移除都是 O(1)，到达目标事件时整条链表的 runnable 一起从 handler 中移除
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class LifecycleDispatcher implements LifecycleEventObserver {
+  private static final Map<LifecycleOwner, LifecycleDispatcher> DISPATCHERS = new WeakHashMap<>();
+
+  private final LifecycleRunnable[] heads = new LifecycleRunnable[Lifecycle.Event.values().length];
+
+  private LifecycleDispatcher() {
+  }
+
+  /**
+   * 获取 owner 对应的 dispatcher，第一次获取时注册 observer，非主线程时切换到主线程注册
+   */
+  @NonNull
+  static LifecycleDispatcher of(@NonNull final LifecycleOwner owner) {
+    final LifecycleDispatcher dispatcher;
+    synchronized (DISPATCHERS) {
+      LifecycleDispatcher existing = DISPATCHERS.get(owner);
+      if (existing != null) {
+        return existing;
+      }
+      dispatcher = new LifecycleDispatcher();
+      DISPATCHERS.put(owner, dispatcher);
+    }
+
+    if (TaskScheduler.isMainThread()) {
+      owner.getLifecycle().addObserver(dispatcher);
+    } else {
+      TaskScheduler.runOnUIThread(new Runnable() {
+        @Override
+        public void run() {
+          owner.getLifecycle().addObserver(dispatcher);
+        }
+      });
+    }
+    return dispatcher;
+  }
+
+  synchronized void add(@NonNull LifecycleRunnable runnable, @NonNull Lifecycle.Event targetEvent) {
+    int index = targetEvent.ordinal();
+    LifecycleRunnable head = heads[index];
+    runnable.targetEvent = targetEvent;
+    runnable.prev = null;
+    runnable.next = head;
+    if (head != null) {
+      head.prev = runnable;
+    }
+    heads[index] = runnable;
+    runnable.linked = true;
+  }
+
+  /**
+   * @return runnable 还在链表中时返回 true，已经被目标事件移除时返回 false
+   */
+  synchronized boolean remove(@NonNull LifecycleRunnable runnable) {
+    if (!runnable.linked) {
+      return false;
+    }
+    if (runnable.prev == null) {
+      heads[runnable.targetEvent.ordinal()] = runnable.next;
+    } else {
+      runnable.prev.next = runnable.next;
+    }
+    if (runnable.next != null) {
+      runnable.next.prev = runnable.prev;
+    }
+    runnable.prev = null;
+    runnable.next = null;
+    runnable.linked = false;
+    return true;
+  }
+
+  @Override
+  public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+    LifecycleRunnable runnable;
+    synchronized (this) {
+      int index = event.ordinal();
+      runnable = heads[index];
+      heads[index] = null;
+      for (LifecycleRunnable node = runnable; node != null; node = node.next) {
+        node.linked = false;
+      }
+    }
+    // 链表已经摘下，在锁外移除 handler 中的消息
+    while (runnable != null) {
+      LifecycleRunnable next = runnable.next;
+      runnable.prev = null;
+      runnable.next = null;
+      runnable.handler.removeCallbacks(runnable);
+      runnable = next;
+    }
+
+    if (event == Lifecycle.Event.ON_DESTROY) {
+      source.getLifecycle().removeObserver(this);
+      synchronized (DISPATCHERS) {
+        if (DISPATCHERS.get(source) == this) {
+          DISPATCHERS.remove(source);
+        }
+      }
+    }
+  }
+}
@@ -16,19 +16,27 @@
 package com.weiwei.task.scheduler;
 
 import android.os.Handler;
-import androidx.annotation.NonNull;
 import androidx.lifecycle.Lifecycle;
-import androidx.lifecycle.LifecycleEventObserver;
 import androidx.lifecycle.LifecycleOwner;
 
 /**
+ * 在指定 Lifecycle.Event 时从 handler 中移除的 runnable，同一个 LifecycleOwner 的全部 LifecycleRunnable 共用一个 observer
+ *
  * @author weicools
  * @date 2021.04.02
  */
 public class LifecycleRunnable implements Runnable {
   private Runnable originRunnable;
-  private LifecycleOwner lifecycleOwner;
-  private LifecycleEventObserver lifecycleObserver;
+  private LifecycleDispatcher dispatcher;
+
+  /**
+   * {@link LifecycleDispatcher} 中的链表节点，由 dispatcher 的锁保护
+   */
+  Handler handler;
+  Lifecycle.Event targetEvent;
+  LifecycleRunnable prev;
+  LifecycleRunnable next;
+  boolean linked;
 
   public LifecycleRunnable(LifecycleOwner lifecycleOwner, Handler handler, Runnable originRunnable) {
     init(lifecycleOwner, handler, Lifecycle.Event.ON_DESTROY, originRunnable);
@@ -38,42 +46,21 @@ public class LifecycleRunnable implements Runnable {
     init(lifecycleOwner, handler, targetEvent, originRunnable);
   }
 
-  private void init(final LifecycleOwner lifecycleOwner, final Handler handler, final Lifecycle.Event targetEvent, final Runnable originRunnable) {
+  private void init(LifecycleOwner lifecycleOwner, Handler handler, Lifecycle.Event targetEvent, Runnable originRunnable) {
     if (originRunnable == null || lifecycleOwner == null) {
       return;
     }
-    this.lifecycleOwner = lifecycleOwner;
     this.originRunnable = originRunnable;
-
-    lifecycleObserver = new LifecycleEventObserver() {
-      @Override
-      public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
-        if (event == targetEvent) {
-          if (LifecycleRunnable.this.lifecycleOwner != null) {
-            LifecycleRunnable.this.lifecycleOwner.getLifecycle().removeObserver(this);
-          }
-          handler.removeCallbacks(LifecycleRunnable.this);
-        }
-      }
-    };
-
-    if (TaskScheduler.isMainThread()) {
-      this.lifecycleOwner.getLifecycle().addObserver(lifecycleObserver);
-    } else {
-      TaskScheduler.runOnUIThread(new Runnable() {
-        @Override
-        public void run() {
-          LifecycleRunnable.this.lifecycleOwner.getLifecycle().addObserver(lifecycleObserver);
-        }
-      });
-    }
+    this.handler = handler;
+    this.dispatcher = LifecycleDispatcher.of(lifecycleOwner);
+    dispatcher.add(this, targetEvent);
   }
 
   @Override
   public void run() {
-    if (originRunnable != null && lifecycleOwner != null) {
+    // 已经被目标事件移除的 runnable 不再执行
+    if (originRunnable != null && dispatcher.remove(this)) {
       originRunnable.run();
-      lifecycleOwner.getLifecycle().removeObserver(lifecycleObserver);
     }
   }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 绑定生命周期的后台任务组：到达指定的 Lifecycle.Event 时取消组内全部任务，
+ * 等待中的任务从线程池队列中移除，执行中的任务中断执行线程，Task 不再回调 onSuccess/onFail 而是回调 onCancel
+ *
+ * <pre>
+ * LifecycleTaskGroup group = TaskScheduler.taskGroup(this);
+ * group.executeTask(loadTask);
+ * group.executeIOTask(saveTask);
+ * </pre>
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class LifecycleTaskGroup {
+  private final HashSet<Entry> entries = new HashSet<>();
+  private boolean canceled;
+
+  LifecycleTaskGroup(@NonNull final LifecycleOwner owner, @NonNull final Lifecycle.Event targetEvent) {
+    final LifecycleEventObserver observer = new LifecycleEventObserver() {
+      @Override
+      public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == targetEvent || event == Lifecycle.Event.ON_DESTROY) {
+          source.getLifecycle().removeObserver(this);
+          cancel();
+        }
+      }
+    };
+
+    if (TaskScheduler.isMainThread()) {
+      addObserver(owner, observer);
+    } else {
+      TaskScheduler.runOnUIThread(new Runnable() {
+        @Override
+        public void run() {
+          addObserver(owner, observer);
+        }
+      });
+    }
+  }
+
+  private void addObserver(LifecycleOwner owner, LifecycleEventObserver observer) {
+    if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+      cancel();
+    } else {
+      owner.getLifecycle().addObserver(observer);
+    }
+  }
+
+  /**
+   * 在并行线程池执行，见 {@link TaskScheduler#executeTask(Runnable)}
+   */
+  public void executeTask(@NonNull Runnable task) {
+    submit(TaskScheduler.parallelExecutor(), task, null, TaskMonitor.EXECUTOR_PARALLEL);
+  }
+
+  /**
+   * 在并行线程池执行，见 {@link TaskScheduler#executeTask(Task)}
+   */
+  public <R> void executeTask(@NonNull Task<R> task) {
+    submit(TaskScheduler.parallelExecutor(), task, task, TaskMonitor.EXECUTOR_PARALLEL);
+  }
+
+  /**
+   * 在 IO 线程池执行，见 {@link TaskScheduler#executeIOTask(Runnable)}
+   */
+  public void executeIOTask(@NonNull Runnable task) {
+    submit(TaskScheduler.ioExecutor(), task, null, TaskMonitor.EXECUTOR_IO);
+  }
+
+  /**
+   * 在 IO 线程池执行，见 {@link TaskScheduler#executeIOTask(Task)}
+   */
+  public <R> void executeIOTask(@NonNull Task<R> task) {
+    submit(TaskScheduler.ioExecutor(), task, task, TaskMonitor.EXECUTOR_IO);
+  }
+
+  /**
+   * 立即取消组内全部任务，之后提交的任务也会直接取消。到达指定的 Lifecycle.Event 时自动调用
+   */
+  public void cancel() {
+    ArrayList<Entry> canceledEntries;
+    synchronized (this) {
+      if (canceled) {
+        return;
+      }
+      canceled = true;
+      canceledEntries = new ArrayList<>(entries);
+      entries.clear();
+    }
+    for (Entry entry : canceledEntries) {
+      entry.cancel();
+    }
+  }
+
+  /**
+   * @return 是否已经取消
+   */
+  public synchronized boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * @return 等待中和执行中的任务数
+   */
+  public synchronized int getActiveCount() {
+    return entries.size();
+  }
+
+  private void submit(ExecutorService executor, Runnable runnable, Task<?> task, String executorName) {
+    Entry entry;
+    synchronized (this) {
+      if (canceled) {
+        entry = null;
+      } else {
+        if (task != null) {
+          task.prepareSubmit();
+          task.groupOwned = true;
+        }
+        entry = new Entry(this, executor, TaskScheduler.monitor().wrap(runnable, executorName), task);
+        entries.add(entry);
+      }
+    }
+    if (entry == null) {
+      if (task != null) {
+        task.cancel();
+      }
+      return;
+    }
+    try {
+      executor.execute(entry);
+    } catch (RejectedExecutionException e) {
+      remove(entry);
+      entry.releaseTask();
+      throw e;
+    }
+  }
+
+  private void remove(Entry entry) {
+    synchronized (this) {
+      entries.remove(entry);
+    }
+  }
+
+  private static final class Entry implements Runnable, Droppable {
+    private final LifecycleTaskGroup group;
+    private final ExecutorService executor;
+    private final Runnable runnable;
+    private final Task<?> task;
+
+    private Thread runner;
+    private boolean canceled;
+
+    Entry(LifecycleTaskGroup group, ExecutorService executor, Runnable runnable, Task<?> task) {
+      this.group = group;
+      this.executor = executor;
+      this.runnable = runnable;
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        // 线程池不支持移除（ForkJoinPool）或者已经被取出时，在这里跳过
+        if (canceled) {
+          return;
+        }
+        runner = Thread.currentThread();
+      }
+      try {
+        runnable.run();
+      } finally {
+        synchronized (this) {
+          runner = null;
+        }
+        group.remove(this);
+        releaseTask();
+      }
+    }
+
+    @Override
+    public void onDropped() {
+      group.remove(this);
+      if (task != null) {
+        task.cancel();
+        releaseTask();
+      }
+    }
+
+    void cancel() {
+      boolean running;
+      synchronized (this) {
+        canceled = true;
+        running = runner != null;
+        // Task 的执行线程由 Task.cancel 中断
+        if (runner != null && task == null) {
+          runner.interrupt();
+        }
+      }
+      if (executor instanceof ThreadPoolExecutor) {
+        ((ThreadPoolExecutor) executor).remove(this);
+      }
+      if (task != null) {
+        task.cancel();
+        // 执行中的任务在 run 结束时释放，这里释放会让 Task.run 重置取消标记
+        if (!running) {
+          releaseTask();
+        }
+      }
+    }
+
+    /**
+     * 任务离开任务组，之后单独提交时 Task.run 重新重置取消标记
+     */
+    void releaseTask() {
+      if (task != null) {
+        task.groupOwned = false;
+      }
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.os.Build;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.HashMap;
+
+/**
+ * 按名称复用的 HandlerThread：同一个名称返回同一个 Looper，按引用计数管理，
+ * 全部引用释放后等待 idleTimeoutMillis，期间没有再次获取时退出线程
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class LooperPool {
+  private static final String TAG = "LooperPool";
+
+  private final TimerWheel timer;
+  private final long idleTimeoutMillis;
+  private final HashMap<String, Entry> entries = new HashMap<>();
+
+  LooperPool(@NonNull TimerWheel timer, long idleTimeoutMillis) {
+    this.timer = timer;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  /**
+   * @param priority 只在创建线程时生效，已存在的线程保持原来的优先级
+   */
+  @NonNull
+  Looper acquire(@NonNull String name, int priority) {
+    HandlerThread thread;
+    synchronized (this) {
+      Entry entry = entries.get(name);
+      if (entry != null && !entry.thread.isAlive()) {
+        // Looper 被持有者直接 quit 了，换一个新线程；之前的引用还会 release，引用计数保留
+        Log.w(TAG, "looper " + name + " was quit outside the pool, recreate it");
+        Entry dead = entry;
+        if (dead.quitTimeout != null) {
+          dead.quitTimeout.cancel();
+        }
+        entry = new Entry(name, new HandlerThread(name, priority));
+        entry.refCount = dead.refCount;
+        entry.thread.start();
+        entries.put(name, entry);
+      } else if (entry == null) {
+        entry = new Entry(name, new HandlerThread(name, priority));
+        entry.thread.start();
+        entries.put(name, entry);
+      }
+      entry.refCount++;
+      if (entry.quitTimeout != null) {
+        entry.quitTimeout.cancel();
+        entry.quitTimeout = null;
+      }
+      thread = entry.thread;
+    }
+    // getLooper 会等待线程启动，不在锁内调用
+    return thread.getLooper();
+  }
+
+  void release(@NonNull String name) {
+    synchronized (this) {
+      Entry entry = entries.get(name);
+      if (entry == null || entry.refCount == 0) {
+        Log.w(TAG, "release looper without acquire: " + name);
+        return;
+      }
+      entry.refCount--;
+      if (entry.refCount == 0) {
+        entry.quitTimeout = timer.schedule(entry, idleTimeoutMillis, 0L);
+      }
+    }
+  }
+
+  /**
+   * @return 存活的 Looper 数量，包括已经全部释放但还在等待退出的
+   */
+  synchronized int getLiveCount() {
+    return entries.size();
+  }
+
+  /**
+   * 在时间轮线程执行
+   */
+  private void quitIfIdle(Entry entry) {
+    synchronized (this) {
+      if (entry.refCount > 0 || entries.get(entry.name) != entry) {
+        return;
+      }
+      entries.remove(entry.name);
+      entry.quitTimeout = null;
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      entry.thread.quitSafely();
+    } else {
+      entry.thread.quit();
+    }
+  }
+
+  private final class Entry implements Runnable {
+    final String name;
+    final HandlerThread thread;
+    int refCount;
+    TimerWheel.Timeout quitTimeout;
+
+    Entry(String name, HandlerThread thread) {
+      this.name = name;
+      this.thread = thread;
+    }
+
+    @Override
+    public void run() {
+      quitIfIdle(this);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import android.os.Process;
+
+/**
+ * 任务的服务质量等级，决定任务在队列中的顺序和执行时的线程优先级
+ * agingMillis 表示任务最多让后来的高等级任务插队多久，等待超过这个时间后按先来先执行，避免低等级任务饿死
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public enum QosClass {
+  /**
+   * 直接阻塞用户操作的任务，如首帧需要的图片解码
+   */
+  USER_BLOCKING(Process.THREAD_PRIORITY_FOREGROUND, 0L),
+  /**
+   * 用户可见但不阻塞操作的任务，如列表预加载
+   */
+  USER_VISIBLE(Process.THREAD_PRIORITY_DEFAULT, 50L),
+  /**
+   * 用户不直接感知的任务，如数据同步
+   */
+  UTILITY(Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE, 500L),
+  /**
+   * 后台任务，如日志上报、清理缓存
+   */
+  BACKGROUND(Process.THREAD_PRIORITY_BACKGROUND, 2000L);
+
+  final int threadPriority;
+  final long agingMillis;
+
+  QosClass(int threadPriority, long agingMillis) {
+    this.threadPriority = threadPriority;
+    this.agingMillis = agingMillis;
+  }
+}
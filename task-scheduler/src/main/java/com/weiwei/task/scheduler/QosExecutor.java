@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 {@link QosClass} 排序的线程池，线程优先级在每个任务执行时设置，执行完恢复
+ * 排序使用 入队时间 + agingMillis，等级高的任务可以插队，但等待足够久的低等级任务不会被一直插队
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class QosExecutor extends ThreadPoolExecutor {
+  private static final String TAG = "QosExecutor";
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  QosExecutor(int threads, long keepAliveSeconds, @NonNull ThreadFactory threadFactory) {
+    super(threads, threads, keepAliveSeconds, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), threadFactory);
+    allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * 没有指定等级的任务（包括 submit 提交的任务）按 {@link QosClass#USER_VISIBLE} 处理
+   */
+  @Override
+  public void execute(@NonNull Runnable command) {
+    execute(command, QosClass.USER_VISIBLE);
+  }
+
+  void execute(@NonNull Runnable command, @NonNull QosClass qos) {
+    if (command instanceof QosRunnable) {
+      super.execute(command);
+    } else {
+      super.execute(new QosRunnable(command, qos, sequence.getAndIncrement()));
+    }
+  }
+
+  private static final class QosRunnable implements Runnable, Comparable<QosRunnable> {
+    private final Runnable runnable;
+    private final QosClass qos;
+    private final long sequence;
+    private final long rank;
+
+    QosRunnable(Runnable runnable, QosClass qos, long sequence) {
+      this.runnable = runnable;
+      this.qos = qos;
+      this.sequence = sequence;
+      this.rank = SystemClock.uptimeMillis() + qos.agingMillis;
+    }
+
+    @Override
+    public void run() {
+      int tid = Process.myTid();
+      int originPriority = Process.getThreadPriority(tid);
+      setThreadPriority(tid, qos.threadPriority);
+      try {
+        runnable.run();
+      } finally {
+        setThreadPriority(tid, originPriority);
+      }
+    }
+
+    @Override
+    public int compareTo(QosRunnable other) {
+      if (rank != other.rank) {
+        return rank < other.rank ? -1 : 1;
+      }
+      return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+    }
+
+    private static void setThreadPriority(int tid, int priority) {
+      try {
+        Process.setThreadPriority(tid, priority);
+      } catch (Throwable t) {
+        Log.w(TAG, "setThreadPriority " + priority + " error " + t);
+      }
+    }
+  }
+}
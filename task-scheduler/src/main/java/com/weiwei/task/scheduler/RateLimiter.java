@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import java.util.concurrent.Executor;
+
+/**
+ * 令牌桶限流：以 permitsPerSecond 的速度生成令牌，最多积攒 burst 个，拿到令牌的任务才会提交执行，拿不到的直接丢弃
+ * 用来限制高频事件提交到线程池的任务数，避免把线程池队列塞满
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class RateLimiter {
+  private final double permitsPerMilli;
+  private final double maxPermits;
+  private final Handler handler;
+  private final Executor executor;
+
+  private double storedPermits;
+  private long lastRefillMillis;
+
+  /**
+   * 任务在主线程执行
+   */
+  public RateLimiter(double permitsPerSecond, int burst) {
+    this(permitsPerSecond, burst, TaskScheduler.mainHandler(), null);
+  }
+
+  public RateLimiter(double permitsPerSecond, int burst, @NonNull Handler handler) {
+    this(permitsPerSecond, burst, handler, null);
+  }
+
+  public RateLimiter(double permitsPerSecond, int burst, @NonNull Executor executor) {
+    this(permitsPerSecond, burst, null, executor);
+  }
+
+  private RateLimiter(double permitsPerSecond, int burst, Handler handler, Executor executor) {
+    if (permitsPerSecond <= 0 || burst <= 0) {
+      throw new IllegalArgumentException("permitsPerSecond=" + permitsPerSecond + ", burst=" + burst);
+    }
+    this.permitsPerMilli = permitsPerSecond / 1000.0;
+    this.maxPermits = burst;
+    this.handler = handler;
+    this.executor = executor;
+    this.storedPermits = burst;
+    this.lastRefillMillis = SystemClock.uptimeMillis();
+  }
+
+  /**
+   * 尝试获取一个令牌，不阻塞
+   */
+  public synchronized boolean tryAcquire() {
+    long now = SystemClock.uptimeMillis();
+    storedPermits = Math.min(maxPermits, storedPermits + (now - lastRefillMillis) * permitsPerMilli);
+    lastRefillMillis = now;
+    if (storedPermits < 1.0) {
+      return false;
+    }
+    storedPermits -= 1.0;
+    return true;
+  }
+
+  /**
+   * 拿到令牌时在目标线程执行 task
+   *
+   * @return 是否提交了 task，没有令牌时丢弃并返回 false
+   */
+  public boolean tryExecute(@NonNull Runnable task) {
+    if (!tryAcquire()) {
+      return false;
+    }
+    if (handler != null) {
+      handler.post(task);
+    } else {
+      executor.execute(task);
+    }
+    return true;
+  }
+}
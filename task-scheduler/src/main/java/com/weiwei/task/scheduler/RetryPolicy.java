@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import androidx.annotation.NonNull;
+import java.util.Random;
+
+/**
+ * Task 失败后的重试策略：最多执行 maxAttempts 次，每次重试前按指数退避等待，等待通过时间轮完成，不占用线程池的线程
+ * 只有最后一次失败才会回调 onFail
+ *
+ * <pre>
+ * RetryPolicy policy = new RetryPolicy.Builder()
+ *     .maxAttempts(4)
+ *     .backoff(200L, 2.0, 5000L)
+ *     .retryOn(new RetryPolicy.Retryable() {
+ *       public boolean shouldRetry(Throwable t) {
+ *         return t instanceof IOException;
+ *       }
+ *     })
+ *     .build();
+ * TaskScheduler.executeIOTask(task, policy);
+ * </pre>
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class RetryPolicy {
+  private static final Random RANDOM = new Random();
+
+  /**
+   * 判断异常是否需要重试
+   */
+  public interface Retryable {
+    boolean shouldRetry(@NonNull Throwable t);
+  }
+
+  private static final Retryable RETRY_ALL = new Retryable() {
+    @Override
+    public boolean shouldRetry(@NonNull Throwable t) {
+      // 中断表示任务被取消，不重试
+      return !(t instanceof InterruptedException);
+    }
+  };
+
+  final int maxAttempts;
+  final long initialDelayMillis;
+  final double multiplier;
+  final long maxDelayMillis;
+  final double jitter;
+  final Retryable retryable;
+
+  private RetryPolicy(Builder builder) {
+    this.maxAttempts = builder.maxAttempts;
+    this.initialDelayMillis = builder.initialDelayMillis;
+    this.multiplier = builder.multiplier;
+    this.maxDelayMillis = builder.maxDelayMillis;
+    this.jitter = builder.jitter;
+    this.retryable = builder.retryable;
+  }
+
+  /**
+   * @param attempt 已经执行的次数，从 1 开始
+   * @return 第 attempt 次失败后是否重试
+   */
+  boolean shouldRetry(int attempt, @NonNull Throwable t) {
+    return attempt < maxAttempts && retryable.shouldRetry(t);
+  }
+
+  /**
+   * @param attempt 已经执行的次数，从 1 开始
+   * @return 下一次执行前的等待时间
+   */
+  long delayMillis(int attempt) {
+    double delay = initialDelayMillis * Math.pow(multiplier, attempt - 1);
+    delay = Math.min(delay, maxDelayMillis);
+    // 在 [delay * (1 - jitter), delay] 之间随机，避免大量任务同时重试
+    delay -= delay * jitter * RANDOM.nextDouble();
+    return (long) delay;
+  }
+
+  public static final class Builder {
+    private int maxAttempts = 3;
+    private long initialDelayMillis = 500L;
+    private double multiplier = 2.0;
+    private long maxDelayMillis = 30_000L;
+    private double jitter = 0.5;
+    private Retryable retryable = RETRY_ALL;
+
+    /**
+     * 最多执行的次数（包括第一次），默认 3
+     */
+    @NonNull
+    public Builder maxAttempts(int maxAttempts) {
+      if (maxAttempts <= 0) {
+        throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+      }
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * 第 n 次重试前等待 initialDelayMillis * multiplier^(n-1)，不超过 maxDelayMillis，默认 500ms、2.0、30s
+     */
+    @NonNull
+    public Builder backoff(long initialDelayMillis, double multiplier, long maxDelayMillis) {
+      if (initialDelayMillis < 0 || multiplier < 1.0 || maxDelayMillis < initialDelayMillis) {
+        throw new IllegalArgumentException("initialDelayMillis=" + initialDelayMillis + ", multiplier=" + multiplier
+            + ", maxDelayMillis=" + maxDelayMillis);
+      }
+      this.initialDelayMillis = initialDelayMillis;
+      this.multiplier = multiplier;
+      this.maxDelayMillis = maxDelayMillis;
+      return this;
+    }
+
+    /**
+     * 随机减少等待时间的比例，0 到 1，默认 0.5
+     */
+    @NonNull
+    public Builder jitter(double jitter) {
+      if (jitter < 0 || jitter > 1) {
+        throw new IllegalArgumentException("jitter must be in [0, 1]: " + jitter);
+      }
+      this.jitter = jitter;
+      return this;
+    }
+
+    /**
+     * 需要重试的异常，默认除 InterruptedException 外全部重试
+     */
+    @NonNull
+    public Builder retryOn(@NonNull Retryable retryable) {
+      this.retryable = retryable;
+      return this;
+    }
+
+    @NonNull
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+  }
+}
@@ -30,6 +30,35 @@ public abstract class SchedulerTask implements Runnable {
 
   AtomicBoolean canceled = new AtomicBoolean(false);
 
+  /**
+   * 当前在时间轮中的任务，取消时立即从时间轮中移除
+   */
+  TimerWheel.Timeout timeout;
+
+  /**
+   * 后台任务是否正在执行，上一次还没执行完时跳过本次周期，避免同一个任务并发执行
+   */
+  private final AtomicBoolean running = new AtomicBoolean(false);
+
+  /**
+   * 时间轮到期时调用，在时间轮线程执行，只负责把任务分发到主线程或 IO 线程池
+   */
+  final Runnable dispatcher = new Runnable() {
+    @Override
+    public void run() {
+      if (canceled.get()) {
+        return;
+      }
+      if (mainThread) {
+        TaskScheduler.runOnUIThread(SchedulerTask.this);
+      } else if (running.compareAndSet(false, true)) {
+        TaskScheduler.timeoutExecutor().execute(backgroundRunnable);
+      }
+    }
+  };
+
+  private final Runnable backgroundRunnable = new BackgroundRunner();
+
   protected SchedulerTask(long periodMillisecond) {
     this.periodMillisecond = periodMillisecond;
   }
@@ -53,4 +82,21 @@ public abstract class SchedulerTask implements Runnable {
       onSchedule();
     }
   }
+
+  private final class BackgroundRunner implements Runnable, Droppable {
+    @Override
+    public void run() {
+      try {
+        SchedulerTask.this.run();
+      } finally {
+        running.set(false);
+      }
+    }
+
+    @Override
+    public void onDropped() {
+      // 本次周期被丢弃，下一个周期正常执行
+      running.set(false);
+    }
+  }
 }
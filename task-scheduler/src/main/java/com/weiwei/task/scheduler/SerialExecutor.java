@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 串行执行器：提交的任务按顺序逐个执行，实际运行在共享线程池中，不占用单独的线程，没有任务时不占用任何线程
+ * 每个任务执行完后重新提交到线程池，不会长时间霸占线程池中的线程
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class SerialExecutor implements Executor {
+  private static final String TAG = "SerialExecutor";
+
+  private final Executor executor;
+  private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+  private final Runnable drainer = new Drainer();
+
+  /**
+   * 所属的 KeyedSerialExecutor，空闲时从中移除，移除后不再接受任务
+   */
+  private final KeyedSerialExecutor<Object> owner;
+  private final Object key;
+
+  private boolean running;
+  private boolean retired;
+
+  /**
+   * @param executor 实际执行任务的线程池
+   */
+  public SerialExecutor(@NonNull Executor executor) {
+    this(executor, null, null);
+  }
+
+  SerialExecutor(@NonNull Executor executor, KeyedSerialExecutor<Object> owner, Object key) {
+    this.executor = executor;
+    this.owner = owner;
+    this.key = key;
+  }
+
+  @Override
+  public void execute(@NonNull Runnable command) {
+    if (!offer(command)) {
+      throw new RejectedExecutionException("SerialExecutor is released");
+    }
+  }
+
+  /**
+   * @return 是否为空闲（没有执行中和等待中的任务）
+   */
+  public synchronized boolean isIdle() {
+    return !running;
+  }
+
+  /**
+   * @return 等待执行的任务数，不包括正在执行的任务
+   */
+  public synchronized int getPendingCount() {
+    return tasks.size();
+  }
+
+  /**
+   * @return 已经被 KeyedSerialExecutor 释放时返回 false
+   */
+  boolean offer(@NonNull Runnable command) {
+    synchronized (this) {
+      if (retired) {
+        return false;
+      }
+      tasks.offer(command);
+      if (running) {
+        return true;
+      }
+      running = true;
+    }
+    schedule();
+    return true;
+  }
+
+  private void schedule() {
+    try {
+      executor.execute(drainer);
+    } catch (RejectedExecutionException e) {
+      // 线程池拒绝时丢弃等待中的任务，之后提交的任务重新开始调度
+      synchronized (this) {
+        tasks.clear();
+        running = false;
+      }
+      release();
+      throw e;
+    }
+  }
+
+  private void runNext() {
+    Runnable task;
+    synchronized (this) {
+      task = tasks.poll();
+    }
+    try {
+      if (task != null) {
+        task.run();
+      }
+    } catch (Throwable t) {
+      // 一个任务失败不影响后续任务
+      Log.e(TAG, "run serial task error " + t);
+    }
+
+    boolean hasNext;
+    synchronized (this) {
+      hasNext = !tasks.isEmpty();
+      running = hasNext;
+    }
+    if (!hasNext) {
+      release();
+      return;
+    }
+    try {
+      schedule();
+    } catch (RejectedExecutionException e) {
+      Log.e(TAG, "schedule next serial task error " + e);
+    }
+  }
+
+  /**
+   * 线程池丢弃了调度任务，和拒绝时一样丢弃等待中的任务，之后提交的任务重新开始调度
+   */
+  private void onDrainerDropped() {
+    Runnable[] dropped;
+    synchronized (this) {
+      dropped = tasks.toArray(new Runnable[0]);
+      tasks.clear();
+      running = false;
+    }
+    for (Runnable task : dropped) {
+      BoundedExecutor.cancelDropped(task);
+    }
+    release();
+  }
+
+  private void release() {
+    if (owner == null) {
+      return;
+    }
+    synchronized (this) {
+      if (running || !tasks.isEmpty()) {
+        return;
+      }
+      retired = true;
+    }
+    owner.release(key, this);
+  }
+
+  private final class Drainer implements Runnable, Droppable {
+    @Override
+    public void run() {
+      runNext();
+    }
+
+    @Override
+    public void onDropped() {
+      onDrainerDropped();
+    }
+  }
+}
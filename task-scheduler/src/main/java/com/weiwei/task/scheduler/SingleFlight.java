@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 按 key 合并同时提交的相同任务：同一个 key 正在执行时，后提交的 Task 不再执行 doInBackground，而是等待第一个 Task 的结果，
+ * 结果分发给每个 Task 的 onSuccess/onFail。ttlMillis 大于 0 时缓存成功的结果，有效期内提交的 Task 直接回调缓存的结果
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class SingleFlight {
+  private static final String TAG = "SingleFlight";
+
+  /**
+   * 缓存数量超过该值时，插入前清理过期的结果
+   */
+  private static final int SWEEP_THRESHOLD = 64;
+
+  private final HashMap<String, Flight> flights = new HashMap<>();
+  private final HashMap<String, CachedResult> cache = new HashMap<>();
+
+  <R> void execute(@NonNull String key, long ttlMillis, @NonNull Task<R> task, @NonNull Executor executor) {
+    Flight flight;
+    synchronized (this) {
+      CachedResult cached = cache.get(key);
+      if (cached != null) {
+        if (cached.expireAt > SystemClock.uptimeMillis()) {
+          deliverSuccess(task, cached.value);
+          return;
+        }
+        cache.remove(key);
+      }
+
+      flight = flights.get(key);
+      if (flight != null) {
+        flight.subscribers.add(task);
+        return;
+      }
+      flight = new Flight(key, ttlMillis, task);
+      flights.put(key, flight);
+    }
+    try {
+      executor.execute(TaskScheduler.monitor().wrap(flight, TaskMonitor.EXECUTOR_PARALLEL));
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        flights.remove(key);
+      }
+      throw e;
+    }
+  }
+
+  synchronized void invalidate(@NonNull String key) {
+    cache.remove(key);
+  }
+
+  private void complete(Flight flight, boolean success, Object value, Throwable error) {
+    ArrayList<Task<?>> subscribers;
+    synchronized (this) {
+      flights.remove(flight.key);
+      if (success && flight.ttlMillis > 0) {
+        long now = SystemClock.uptimeMillis();
+        if (cache.size() >= SWEEP_THRESHOLD) {
+          sweep(now);
+        }
+        cache.put(flight.key, new CachedResult(value, now + flight.ttlMillis));
+      }
+      // 移出 map 之后不会再有新的订阅者
+      subscribers = flight.subscribers;
+    }
+    for (Task<?> subscriber : subscribers) {
+      if (success) {
+        deliverSuccess(subscriber, value);
+      } else {
+        subscriber.deliverFail(error);
+      }
+    }
+  }
+
+  private void sweep(long now) {
+    Iterator<Map.Entry<String, CachedResult>> iterator = cache.entrySet().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().getValue().expireAt <= now) {
+        iterator.remove();
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <R> void deliverSuccess(Task<R> task, Object value) {
+    task.deliverSuccess((R) value);
+  }
+
+  private static final class CachedResult {
+    final Object value;
+    final long expireAt;
+
+    CachedResult(Object value, long expireAt) {
+      this.value = value;
+      this.expireAt = expireAt;
+    }
+  }
+
+  private final class Flight implements Runnable, Droppable {
+    final String key;
+    final long ttlMillis;
+    final Task<?> leader;
+    final ArrayList<Task<?>> subscribers = new ArrayList<>();
+
+    Flight(String key, long ttlMillis, Task<?> leader) {
+      this.key = key;
+      this.ttlMillis = ttlMillis;
+      this.leader = leader;
+      subscribers.add(leader);
+    }
+
+    @Override
+    public void run() {
+      Object value;
+      try {
+        // 直接调用 doInBackground，取消第一个 Task 不会中断其他 Task 共享的执行
+        value = leader.doInBackground();
+      } catch (Throwable t) {
+        Log.e(TAG, "run shared task " + key + " error " + t);
+        complete(this, false, null, t);
+        return;
+      }
+      complete(this, true, value, null);
+    }
+
+    @Override
+    public void onDropped() {
+      // 被线程池丢弃时所有订阅者都回调失败，之后提交的同 key 任务重新执行
+      complete(this, false, null, new RejectedExecutionException("Shared task " + key + " is dropped"));
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import android.annotation.SuppressLint;
+import androidx.annotation.NonNull;
+import java.util.List;
+
+/**
+ * 可拆分的批量 CPU 任务，items 会被二分拆成不超过 threshold 的切片并行处理，再按顺序两两合并结果。
+ * 只有在 work-stealing 模式下才会真正拆分执行，否则在一个线程中对全部 items 调用 {@link #compute(List)}
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public abstract class SplitTask<T, R> extends Task<R> {
+
+  private final List<T> items;
+  private final int threshold;
+
+  /**
+   * @param items 需要处理的数据，执行期间不要修改
+   * @param threshold 每个切片的最大数量，切片小于等于该值时不再拆分
+   */
+  protected SplitTask(@NonNull List<T> items, int threshold) {
+    if (threshold <= 0) {
+      throw new IllegalArgumentException("threshold must be positive: " + threshold);
+    }
+    this.items = items;
+    this.threshold = threshold;
+  }
+
+  /**
+   * 处理一个切片，在工作线程执行，可能被多个线程同时调用
+   *
+   * @param slice items 的一个连续子列表
+   * @return 切片的结果
+   * @throws InterruptedException 任务被取消
+   */
+  protected abstract R compute(@NonNull List<T> slice) throws InterruptedException;
+
+  /**
+   * 合并两个相邻切片的结果，left 对应的切片在 right 之前
+   */
+  protected abstract R merge(R left, R right);
+
+  @SuppressLint("NewApi") // isWorkStealing() 只会在 API 21 及以上返回 true
+  @Override
+  public final R doInBackground() throws InterruptedException {
+    if (items.size() > threshold && TaskExecutor.get().isWorkStealing()) {
+      return ForkJoinSupport.invoke(this, items, threshold);
+    }
+    return compute(items);
+  }
+}
@@ -16,6 +16,10 @@
 package com.weiwei.task.scheduler;
 
 import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -30,6 +34,44 @@ public abstract class Task<R> implements Runnable {
   private final AtomicReference<Thread> taskThread = new AtomicReference<>();
   private final AtomicBoolean canceledAtomic = new AtomicBoolean(false);
 
+  /**
+   * 属于 {@link LifecycleTaskGroup} 的任务取消后不能再执行，run 时不重置取消标记；
+   * 任务在组内执行结束或被移除时清除，之后单独提交的任务可以重新执行
+   */
+  volatile boolean groupOwned;
+
+  /**
+   * 等待主线程分发的结果（R 或 Throwable），分发后清空。
+   * 上一次的结果还没分发时同一个 Task 又产生了结果（重新执行），新的结果按顺序暂存在 overflowResults 中，
+   * 和上一次的结果一起分发，每次回调对应各自的结果；只有这种情况需要创建对象
+   */
+  private final Object resultLock = new Object();
+  private boolean resultPending;
+  private Object resultValue;
+  private ArrayList<PendingResult> overflowResults;
+
+  /**
+   * 批量分发时使用，见 {@link TaskResultHandler}，batchQueued 为 true 时已经在批量分发的栈中
+   */
+  final AtomicBoolean batchQueued = new AtomicBoolean(false);
+  Task<?> pendingNext;
+  int pendingWhat;
+
+  /**
+   * 超时任务在时间轮中的截止时间，任务完成和超时只有一方能成功取消/触发它，只对设置它的那一次提交有效
+   */
+  private volatile TimerWheel.Timeout deadline;
+  private final AtomicBoolean timedOut = new AtomicBoolean(false);
+
+  /**
+   * 重试策略，见 {@link TaskScheduler#executeTask(Task, RetryPolicy)}，只对设置它的那一次提交有效，每次提交时重置
+   */
+  private RetryPolicy retryPolicy;
+  private ExecutorService retryExecutor;
+  private String retryExecutorName;
+  private int attempt;
+  private volatile TimerWheel.Timeout retryTimeout;
+
   /**
    * 异步线程处理任务，在非主线程执行
    *
@@ -67,16 +109,131 @@ public abstract class Task<R> implements Runnable {
 
     Thread t = taskThread.get();
     if (t != null) {
-      Log.d(TAG, "Task cancel: " + t.getName());
+      if (TaskExecutor.get().isDebugLog()) {
+        Log.d(TAG, "Task cancel: " + t.getName());
+      }
       t.interrupt();
     }
 
-    TaskScheduler.runOnUIThread(new Runnable() {
+    TimerWheel.Timeout d = deadline;
+    if (d != null) {
+      d.cancel();
+    }
+    TimerWheel.Timeout r = retryTimeout;
+    if (r != null) {
+      r.cancel();
+    }
+
+    TaskExecutor.get().getResultHandler().send(TaskResultHandler.MSG_CANCEL, this);
+  }
+
+  /**
+   * 按重试策略提交到线程池
+   *
+   * @param executorName 统计中使用的线程池名
+   */
+  void executeWithRetry(@NonNull RetryPolicy policy, @NonNull ExecutorService executor, @NonNull String executorName) {
+    prepareSubmit();
+    retryPolicy = policy;
+    retryExecutor = executor;
+    retryExecutorName = executorName;
+    attempt = 1;
+    executor.execute(TaskScheduler.monitor().wrap(this, executorName));
+  }
+
+  /**
+   * 每次提交到线程池之前调用，清除上一次提交留下的重试和超时状态，还没触发的重试和截止时间不再生效
+   */
+  void prepareSubmit() {
+    TimerWheel.Timeout d = deadline;
+    if (d != null) {
+      d.cancel();
+      deadline = null;
+    }
+    timedOut.set(false);
+    TimerWheel.Timeout r = retryTimeout;
+    if (r != null) {
+      r.cancel();
+      retryTimeout = null;
+    }
+    retryPolicy = null;
+    retryExecutor = null;
+    retryExecutorName = null;
+    attempt = 0;
+  }
+
+  /**
+   * 在执行线程调用
+   *
+   * @return 已经安排重试时返回 true，此时不回调 onFail
+   */
+  private boolean scheduleRetry(Throwable throwable) {
+    final RetryPolicy policy = retryPolicy;
+    if (policy == null || isCanceled() || timedOut.get() || !policy.shouldRetry(attempt, throwable)) {
+      return false;
+    }
+    long delay = policy.delayMillis(attempt);
+    attempt++;
+    final ExecutorService executor = retryExecutor;
+    final String executorName = retryExecutorName;
+    if (TaskExecutor.get().isDebugLog()) {
+      Log.d(TAG, "Task retry attempt " + attempt + " after " + delay + "ms, error " + throwable);
+    }
+    retryTimeout = TaskExecutor.get().getTimer().schedule(new Runnable() {
+      @Override
+      public void run() {
+        retryTimeout = null;
+        if (!isCanceled()) {
+          executor.execute(TaskScheduler.monitor().wrap(Task.this, executorName));
+        }
+      }
+    }, delay, 0L);
+    return true;
+  }
+
+  /**
+   * 设置截止时间，从调用时开始计时（包括在队列中等待的时间），到期时中断执行线程并通过 onFail 回调 TimeoutException
+   */
+  void startDeadline(final long timeoutMillis) {
+    prepareSubmit();
+    deadline = TaskExecutor.get().getTimer().schedule(new Runnable() {
       @Override
       public void run() {
-        onCancel();
+        onDeadline(timeoutMillis);
       }
-    });
+    }, timeoutMillis, 0L);
+  }
+
+  /**
+   * 在时间轮线程执行
+   */
+  private void onDeadline(long timeoutMillis) {
+    timedOut.set(true);
+    Thread t = taskThread.get();
+    if (t != null) {
+      t.interrupt();
+    }
+    postResult(TaskResultHandler.MSG_FAIL, new TimeoutException("Task timeout after " + timeoutMillis + "ms"));
+  }
+
+  /**
+   * 任务在截止时间之前完成时返回 true，已经超时时返回 false，此时结果已经由 onDeadline 分发
+   */
+  boolean finishBeforeDeadline() {
+    TimerWheel.Timeout d = deadline;
+    if (d == null) {
+      return true;
+    }
+    deadline = null;
+    return d.cancel();
+  }
+
+  /**
+   * 统计和 systrace 中使用的任务名，默认为类名，匿名类建议重写
+   */
+  @NonNull
+  public String getTaskName() {
+    return getClass().getName();
   }
 
   /**
@@ -88,33 +245,132 @@ public abstract class Task<R> implements Runnable {
     return canceledAtomic.get();
   }
 
+  /**
+   * 在当前线程执行 doInBackground 并直接返回结果，不回调 onSuccess/onFail，cancel 时同样会中断当前线程
+   */
+  R execute() throws InterruptedException {
+    Thread current = Thread.currentThread();
+    taskThread.set(current);
+    try {
+      return doInBackground();
+    } finally {
+      taskThread.compareAndSet(current, null);
+    }
+  }
+
   @Override
   public void run() {
+    // 在队列中等待时已经超时
+    if (timedOut.get()) {
+      return;
+    }
+
+    Thread current = Thread.currentThread();
+    TaskExecutor executor = TaskExecutor.get();
     try {
-      Log.d(TAG, "Task : " + Thread.currentThread().getName());
-      taskThread.compareAndSet(null, Thread.currentThread());
-      canceledAtomic.set(false);
-
-      final R result = doInBackground();
-
-      TaskScheduler.runOnUIThread(new Runnable() {
-        @Override
-        public void run() {
-          if (!isCanceled()) {
-            onSuccess(result);
-          }
-        }
-      });
-    } catch (final Throwable throwable) {
-      Log.e(TAG, "handle background Task  error " + throwable);
-      TaskScheduler.runOnUIThread(new Runnable() {
-        @Override
-        public void run() {
-          if (!isCanceled()) {
-            onFail(throwable);
-          }
+      if (executor.isDebugLog()) {
+        Log.d(TAG, "Task : " + current.getName());
+      }
+      taskThread.set(current);
+      if (!groupOwned) {
+        canceledAtomic.set(false);
+      } else if (isCanceled()) {
+        // cancel 发生在设置 taskThread 之前，没有中断到当前线程，这里直接结束，不回调结果
+        return;
+      }
+
+      R r = doInBackground();
+      if (finishBeforeDeadline()) {
+        postResult(TaskResultHandler.MSG_SUCCESS, r);
+      }
+    } catch (Throwable throwable) {
+      if (scheduleRetry(throwable)) {
+        return;
+      }
+      if (finishBeforeDeadline()) {
+        Log.e(TAG, "handle background Task  error " + throwable);
+        postResult(TaskResultHandler.MSG_FAIL, throwable);
+      }
+    } finally {
+      // 执行完之后不再持有线程，避免 cancel 中断线程池中的其他任务
+      taskThread.compareAndSet(current, null);
+    }
+  }
+
+  /**
+   * 把其他地方得到的结果通过当前 Task 的 onSuccess 分发，见 {@link SingleFlight}
+   */
+  void deliverSuccess(R r) {
+    postResult(TaskResultHandler.MSG_SUCCESS, r);
+  }
+
+  /**
+   * 把其他地方得到的异常通过当前 Task 的 onFail 分发
+   */
+  void deliverFail(Throwable t) {
+    postResult(TaskResultHandler.MSG_FAIL, t);
+  }
+
+  private void postResult(int what, Object value) {
+    synchronized (resultLock) {
+      if (resultPending) {
+        // 上一次的结果还在等待分发，排在它后面一起分发
+        if (overflowResults == null) {
+          overflowResults = new ArrayList<>(2);
         }
-      });
+        overflowResults.add(new PendingResult(what, value));
+        return;
+      }
+      resultPending = true;
+      resultValue = value;
+    }
+    TaskExecutor.get().getResultHandler().send(what, this);
+  }
+
+  /**
+   * 在主线程分发结果，由 {@link TaskResultHandler} 调用，结果只在 Task 的字段中暂存，不需要额外创建 Runnable
+   */
+  void dispatchResult(int what) {
+    if (what == TaskResultHandler.MSG_CANCEL) {
+      onCancel();
+      return;
+    }
+    Object value;
+    ArrayList<PendingResult> overflow;
+    synchronized (resultLock) {
+      value = resultValue;
+      overflow = overflowResults;
+      resultValue = null;
+      overflowResults = null;
+      resultPending = false;
+    }
+    dispatchResult(what, value);
+    if (overflow != null) {
+      for (PendingResult pending : overflow) {
+        dispatchResult(pending.what, pending.value);
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private void dispatchResult(int what, Object value) {
+    if (isCanceled()) {
+      return;
+    }
+    if (what == TaskResultHandler.MSG_SUCCESS) {
+      onSuccess((R) value);
+    } else if (what == TaskResultHandler.MSG_FAIL) {
+      onFail((Throwable) value);
+    }
+  }
+
+  private static final class PendingResult {
+    final int what;
+    final Object value;
+
+    PendingResult(int what, Object value) {
+      this.what = what;
+      this.value = value;
     }
   }
 }
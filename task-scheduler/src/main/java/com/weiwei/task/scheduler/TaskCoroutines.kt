@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler
+
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Deferred
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.suspendCancellableCoroutine
+
+/**
+ * 使用 TaskScheduler 线程池的协程调度器，和 Task 共用同一套线程，不再额外使用 Dispatchers.IO/Default 的线程
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+
+/**
+ * 并行线程池调度器，适合 CPU 密集型任务
+ */
+val parallelDispatcher: CoroutineDispatcher by lazy { TaskScheduler.parallelExecutor().asCoroutineDispatcher() }
+
+/**
+ * IO 线程池调度器，受 IO 线程池的线程数上限约束
+ */
+val ioDispatcher: CoroutineDispatcher by lazy { TaskScheduler.ioExecutor().asCoroutineDispatcher() }
+
+/**
+ * IO 线程池上的并发受限视图，给某个子系统单独限制并发数，不会创建新的线程
+ *
+ * @param parallelism 最大并发数
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+fun ioDispatcher(parallelism: Int): CoroutineDispatcher = ioDispatcher.limitedParallelism(parallelism)
+
+/**
+ * 并行线程池上的并发受限视图
+ *
+ * @param parallelism 最大并发数
+ */
+@OptIn(ExperimentalCoroutinesApi::class)
+fun parallelDispatcher(parallelism: Int): CoroutineDispatcher = parallelDispatcher.limitedParallelism(parallelism)
+
+/**
+ * 在 [executor] 中执行 doInBackground 并挂起等待结果，不会回调 onSuccess/onFail。
+ * 协程被取消时调用 [TaskScheduler.cancelTask]，正在执行的线程会被中断，并回调 onCancel
+ */
+suspend fun <R> Task<R>.await(executor: Executor = TaskScheduler.parallelExecutor()): R =
+  suspendCancellableCoroutine { continuation ->
+    continuation.invokeOnCancellation { TaskScheduler.cancelTask(this) }
+    executor.execute(object : Runnable, Droppable {
+      override fun run() {
+        if (!continuation.isActive) {
+          return
+        }
+        try {
+          continuation.resume(execute())
+        } catch (t: Throwable) {
+          continuation.resumeWithException(t)
+        }
+      }
+
+      // 被 IO 线程池丢弃时不会再执行，挂起的协程以 RejectedExecutionException 结束
+      override fun onDropped() {
+        if (continuation.isActive) {
+          continuation.resumeWithException(RejectedExecutionException("Task is dropped"))
+        }
+      }
+    })
+  }
+
+/**
+ * 在 [scope] 中异步执行 Task，Deferred 被取消时同样会取消 Task
+ */
+fun <R> Task<R>.asDeferred(scope: CoroutineScope, executor: Executor = TaskScheduler.parallelExecutor()): Deferred<R> =
+  scope.async { await(executor) }
+
+/**
+ * 上游在并行线程池执行
+ */
+fun <T> Flow<T>.flowOnParallel(): Flow<T> = flowOn(parallelDispatcher)
+
+/**
+ * 上游在 IO 线程池执行
+ */
+fun <T> Flow<T>.flowOnIo(): Flow<T> = flowOn(ioDispatcher)
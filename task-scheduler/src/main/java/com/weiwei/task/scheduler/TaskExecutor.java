@@ -15,6 +15,7 @@
 
 package com.weiwei.task.scheduler;
 
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
@@ -23,9 +24,6 @@ import androidx.core.os.HandlerCompat;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -44,49 +42,127 @@ final class TaskExecutor {
     private static final int CORE_POOL_SIZE = Math.max(2, Math.min(CPU_COUNT + 1, 4));
     private static final int MAXIMUM_POOL_SIZE = CORE_POOL_SIZE * 2 + 1;
     private static final long KEEP_ALIVE = 60L;
+    private static final int WORK_STEALING_PARALLELISM = Math.max(2, CPU_COUNT);
+
+    private static TaskSchedulerConfig sConfig;
+    private static boolean sCreated;
+
+    private final TaskSchedulerConfig config;
+    private final boolean workStealing;
 
     private final ExecutorService parallelExecutor;
-    private final ExecutorService timeOutExecutor;
+    private final BoundedExecutor timeOutExecutor;
+    private final QosExecutor qosExecutor;
+
+    private final TimerWheel timer;
+    private final TaskMonitor monitor;
+    private final LooperPool looperPool;
+    private final IdleTaskQueue idleTaskQueue;
+    private final JankWatchdog jankWatchdog;
+    private final SingleFlight singleFlight = new SingleFlight();
 
     private final Handler asyncHandler;
     private final Handler mainHandler;
+    private final TaskResultHandler resultHandler;
 
     static TaskExecutor get() {
         return Holder.INSTANCE;
     }
 
-    private TaskExecutor() {
-        mainHandler = new Handler(Looper.getMainLooper());
-        asyncHandler = HandlerCompat.createAsync(Looper.getMainLooper());
-
-        parallelExecutor = new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>(256), createThreadFactory("TaskExecutor #"), new RejectedExecutionHandler() {
-            @Override
-            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                timeOutExecutor.execute(r);
+    static void init(@NonNull TaskSchedulerConfig config) {
+        synchronized (TaskExecutor.class) {
+            if (sCreated) {
+                throw new IllegalStateException("TaskScheduler.init must be called before TaskScheduler is used");
             }
-        });
+            sConfig = config;
+        }
+    }
 
-        timeOutExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE, TimeUnit.SECONDS,
-            new SynchronousQueue<>(), createThreadFactory("TaskExecutor timeoutThread #"));
+    private TaskExecutor() {
+        synchronized (TaskExecutor.class) {
+            sCreated = true;
+            config = sConfig != null ? sConfig : TaskSchedulerConfig.defaultConfig();
+        }
 
-        Log.d("TaskExecutor", "cpuCount=" + CPU_COUNT + ", corePoolSize=" + CORE_POOL_SIZE + ", maximumPoolSize=" + MAXIMUM_POOL_SIZE);
+        mainHandler = new Handler(Looper.getMainLooper());
+        asyncHandler = HandlerCompat.createAsync(Looper.getMainLooper());
+        resultHandler = new TaskResultHandler(Looper.getMainLooper(), config.batchResults);
+        monitor = new TaskMonitor(config.monitor, config.traceSections);
+        idleTaskQueue = new IdleTaskQueue(config.idleBudgetMillis);
+        jankWatchdog = new JankWatchdog();
+
+        // ForkJoinPool 从 API 21 开始可用，低版本降级为普通线程池
+        if (config.workStealing && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            workStealing = true;
+            parallelExecutor = ForkJoinSupport.createPool(WORK_STEALING_PARALLELISM, "TaskExecutor #");
+        } else {
+            workStealing = false;
+            parallelExecutor = new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(256), createThreadFactory("TaskExecutor #"), new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                    monitor.onReject(r, TaskMonitor.EXECUTOR_PARALLEL);
+                    timeOutExecutor.execute(r);
+                }
+            });
+        }
+
+        timeOutExecutor = new BoundedExecutor(config.ioMaxThreads, config.ioQueueCapacity, KEEP_ALIVE, config.ioPolicy,
+            config.ioBlockTimeoutMillis, createThreadFactory("TaskExecutor timeoutThread #"), monitor);
+
+        // 线程优先级由每个任务自己设置，线程本身不固定为后台优先级
+        qosExecutor = new QosExecutor(CORE_POOL_SIZE, KEEP_ALIVE, createThreadFactory("TaskExecutor qos #", false));
+
+        timer = new TimerWheel("TaskExecutor timer");
+        looperPool = new LooperPool(timer, config.looperIdleTimeoutMillis);
+
+        Log.d("TaskExecutor", "cpuCount=" + CPU_COUNT + ", corePoolSize=" + CORE_POOL_SIZE + ", maximumPoolSize=" + MAXIMUM_POOL_SIZE
+            + ", workStealing=" + workStealing + ", ioMaxThreads=" + config.ioMaxThreads + ", ioQueueCapacity=" + config.ioQueueCapacity);
     }
 
     private ThreadFactory createThreadFactory(final String name) {
+        return createThreadFactory(name, true);
+    }
+
+    private ThreadFactory createThreadFactory(final String name, final boolean background) {
         return new ThreadFactory() {
             private final AtomicInteger count = new AtomicInteger(1);
 
             @Override
             public Thread newThread(Runnable r) {
-                return new Thread(new BackgroundRunnable(r), name + count.getAndIncrement());
+                return new Thread(background ? new BackgroundRunnable(r) : r, name + count.getAndIncrement());
             }
         };
     }
 
     @NonNull
-    ScheduledExecutorService createScheduledExecutor() {
-        return new ScheduledThreadPoolExecutor(1, createThreadFactory("TaskExecutor scheduler #"));
+    TimerWheel getTimer() {
+        return timer;
+    }
+
+    @NonNull
+    SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    @NonNull
+    JankWatchdog getJankWatchdog() {
+        return jankWatchdog;
+    }
+
+    @NonNull
+    IdleTaskQueue getIdleTaskQueue() {
+        return idleTaskQueue;
+    }
+
+    @NonNull
+    LooperPool getLooperPool() {
+        return looperPool;
+    }
+
+    @NonNull
+    TaskMonitor getMonitor() {
+        return monitor;
     }
 
     @NonNull
@@ -94,16 +170,37 @@ final class TaskExecutor {
         return parallelExecutor;
     }
 
+    boolean isDebugLog() {
+        return config.debugLog;
+    }
+
+    /**
+     * 并行线程池是否为 work-stealing 模式 (ForkJoinPool)
+     */
+    boolean isWorkStealing() {
+        return workStealing;
+    }
+
     @NonNull
-    ExecutorService getTimeOutExecutor() {
+    BoundedExecutor getTimeOutExecutor() {
         return timeOutExecutor;
     }
 
+    @NonNull
+    QosExecutor getQosExecutor() {
+        return qosExecutor;
+    }
+
     @NonNull
     Handler getMainHandler() {
         return mainHandler;
     }
 
+    @NonNull
+    TaskResultHandler getResultHandler() {
+        return resultHandler;
+    }
+
     @NonNull
     Handler getAsyncHandler() {
         return asyncHandler;
@@ -0,0 +1,441 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 有依赖关系的任务图，一般用于启动任务。
+ * 没有依赖关系的任务在并行线程池中同时执行，依赖全部完成后才会执行当前任务，启动耗时由最长的依赖链（关键路径）决定
+ *
+ * <pre>
+ * TaskGraph graph = new TaskGraph.Builder()
+ *     .add("mmkv", mmkvInit)
+ *     .add("config", configInit).dependsOn("mmkv").blocking()
+ *     .add("theme", themeInit).onMainThread().dependsOn("config")
+ *     .build();
+ * graph.start();
+ * // 第一个 Activity 启动前等待 blocking 任务完成
+ * graph.await(3000L);
+ * </pre>
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class TaskGraph {
+  private static final String TAG = "TaskGraph";
+
+  private final List<Node> nodes;
+  private final List<Node> roots;
+  private final CountDownLatch blockingLatch;
+  private final CountDownLatch finishLatch;
+  private final AtomicBoolean started = new AtomicBoolean(false);
+
+  /**
+   * 等待运行的主线程任务，await 在主线程调用时直接从这里取任务执行，避免互相等待
+   */
+  private final LinkedBlockingQueue<Node> mainQueue = new LinkedBlockingQueue<>();
+  private final Node wakeUp = new Node("wakeUp", null);
+
+  private final Runnable mainDrainer = new Runnable() {
+    @Override
+    public void run() {
+      Node node;
+      while ((node = mainQueue.poll()) != null) {
+        if (node != wakeUp) {
+          runNode(node);
+        }
+      }
+    }
+  };
+
+  private TaskGraph(List<Node> nodes) {
+    this.nodes = nodes;
+    this.roots = new ArrayList<>();
+    int blockingCount = 0;
+    for (Node node : nodes) {
+      if (node.dependencies.isEmpty()) {
+        roots.add(node);
+      }
+      if (node.blocking) {
+        blockingCount++;
+      }
+    }
+    // 没有标记 blocking 的任务时，await 等待全部任务完成
+    if (blockingCount == 0) {
+      for (Node node : nodes) {
+        node.blocking = true;
+      }
+      blockingCount = nodes.size();
+    }
+    blockingLatch = new CountDownLatch(blockingCount);
+    finishLatch = new CountDownLatch(nodes.size());
+  }
+
+  /**
+   * 开始执行，只有第一次调用有效
+   */
+  public void start() {
+    if (!started.compareAndSet(false, true)) {
+      return;
+    }
+    for (Node node : roots) {
+      dispatch(node);
+    }
+  }
+
+  /**
+   * 等待 blocking 任务完成（没有 blocking 任务时等待全部任务），在主线程调用时会在当前线程执行就绪的主线程任务
+   *
+   * @param timeoutMillis 最长等待时间
+   * @return blocking 任务是否全部完成
+   */
+  public boolean await(long timeoutMillis) throws InterruptedException {
+    start();
+    if (!TaskScheduler.isMainThread()) {
+      return blockingLatch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+    while (blockingLatch.getCount() > 0) {
+      long remaining = deadline - SystemClock.uptimeMillis();
+      if (remaining <= 0) {
+        return false;
+      }
+      Node node = mainQueue.poll(remaining, TimeUnit.MILLISECONDS);
+      if (node != null && node != wakeUp) {
+        runNode(node);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return 全部任务是否已完成
+   */
+  public boolean isFinished() {
+    return finishLatch.getCount() == 0;
+  }
+
+  /**
+   * 关键路径：按实际耗时计算的最长依赖链，任务全部完成后才有结果
+   *
+   * @return 关键路径上的任务名，按执行顺序
+   */
+  @NonNull
+  public List<String> getCriticalPath() {
+    if (!isFinished()) {
+      return Collections.emptyList();
+    }
+    Map<Node, Long> finishCost = new HashMap<>();
+    Map<Node, Node> previous = new HashMap<>();
+    Node last = null;
+    // nodes 已经按拓扑顺序排列
+    for (Node node : nodes) {
+      long maxDependency = 0L;
+      for (Node dependency : node.dependencies) {
+        long cost = finishCost.get(dependency);
+        if (cost >= maxDependency) {
+          maxDependency = cost;
+          previous.put(node, dependency);
+        }
+      }
+      long cost = maxDependency + node.costMillis();
+      finishCost.put(node, cost);
+      if (last == null || cost > finishCost.get(last)) {
+        last = node;
+      }
+    }
+
+    ArrayList<String> path = new ArrayList<>();
+    for (Node node = last; node != null; node = previous.get(node)) {
+      path.add(node.name);
+    }
+    Collections.reverse(path);
+    return path;
+  }
+
+  /**
+   * @return 每个任务的名称、线程、耗时，以及关键路径
+   */
+  @NonNull
+  public String dump() {
+    StringBuilder builder = new StringBuilder("TaskGraph ");
+    if (!isFinished()) {
+      return builder.append("is running, finished ").append(nodes.size() - finishLatch.getCount()).append('/').append(nodes.size())
+          .toString();
+    }
+    long start = Long.MAX_VALUE;
+    long end = 0L;
+    long sum = 0L;
+    for (Node node : nodes) {
+      start = Math.min(start, node.startMillis);
+      end = Math.max(end, node.endMillis);
+      sum += node.costMillis();
+    }
+    builder.append("wall=").append(end - start).append("ms, sum=").append(sum).append("ms\n");
+    for (Node node : nodes) {
+      builder.append("  ").append(node.name).append(node.mainThread ? " [main]" : "").append(": ").append(node.costMillis())
+          .append("ms, offset=").append(node.startMillis - start).append("ms\n");
+    }
+    long criticalCost = 0L;
+    List<String> criticalPath = getCriticalPath();
+    for (Node node : nodes) {
+      if (criticalPath.contains(node.name)) {
+        criticalCost += node.costMillis();
+      }
+    }
+    return builder.append("  critical path (").append(criticalCost).append("ms): ").append(criticalPath).toString();
+  }
+
+  private void dispatch(Node node) {
+    if (node.mainThread) {
+      mainQueue.offer(node);
+      TaskScheduler.runOnUIThread(mainDrainer);
+    } else {
+      TaskScheduler.parallelExecutor().execute(node.runner);
+    }
+  }
+
+  private void runNode(Node node) {
+    runNode(node, true);
+  }
+
+  /**
+   * @param execute 为 false 时只完成依赖和计数，用于被线程池丢弃的任务
+   */
+  private void runNode(Node node, boolean execute) {
+    if (!node.started.compareAndSet(false, true)) {
+      return;
+    }
+    node.startMillis = SystemClock.uptimeMillis();
+    if (execute) {
+      try {
+        node.runnable.run();
+      } catch (Throwable t) {
+        // 单个启动任务失败不阻塞后续任务
+        Log.e(TAG, "run " + node.name + " error " + t);
+      }
+    } else {
+      Log.e(TAG, "run " + node.name + " error: dropped by executor");
+    }
+    node.endMillis = SystemClock.uptimeMillis();
+
+    for (Node dependent : node.dependents) {
+      if (dependent.remaining.decrementAndGet() == 0) {
+        dispatch(dependent);
+      }
+    }
+    if (node.blocking) {
+      blockingLatch.countDown();
+      if (blockingLatch.getCount() == 0) {
+        mainQueue.offer(wakeUp);
+      }
+    }
+    finishLatch.countDown();
+    if (finishLatch.getCount() == 0 && TaskExecutor.get().isDebugLog()) {
+      Log.d(TAG, dump());
+    }
+  }
+
+  private final class NodeRunner implements Runnable, Droppable {
+    private final Node node;
+
+    NodeRunner(Node node) {
+      this.node = node;
+    }
+
+    @Override
+    public void run() {
+      runNode(node);
+    }
+
+    @Override
+    public void onDropped() {
+      // 和执行失败一样处理，不阻塞依赖它的任务和 await
+      runNode(node, false);
+    }
+  }
+
+  private static final class Node {
+    final String name;
+    final Runnable runnable;
+    final List<String> dependencyNames = new ArrayList<>();
+    final List<Node> dependencies = new ArrayList<>();
+    final List<Node> dependents = new ArrayList<>();
+    final AtomicInteger remaining = new AtomicInteger();
+    final AtomicBoolean started = new AtomicBoolean(false);
+
+    boolean mainThread;
+    boolean blocking;
+    Runnable runner;
+
+    volatile long startMillis;
+    volatile long endMillis;
+
+    Node(String name, Runnable runnable) {
+      this.name = name;
+      this.runnable = runnable;
+    }
+
+    long costMillis() {
+      return endMillis - startMillis;
+    }
+
+    /**
+     * Builder 中的配置，不包含依赖关系和执行状态
+     */
+    Node copy() {
+      Node node = new Node(name, runnable);
+      node.mainThread = mainThread;
+      node.blocking = blocking;
+      return node;
+    }
+  }
+
+  public static final class Builder {
+    private final LinkedHashMap<String, Node> nodes = new LinkedHashMap<>();
+    private Node current;
+
+    /**
+     * 添加一个任务，默认在并行线程池执行，之后调用的 dependsOn、onMainThread、blocking 作用于这个任务
+     *
+     * @param name 任务名，不能重复
+     */
+    @NonNull
+    public Builder add(@NonNull String name, @NonNull Runnable runnable) {
+      if (nodes.containsKey(name)) {
+        throw new IllegalArgumentException("Duplicate task: " + name);
+      }
+      current = new Node(name, runnable);
+      nodes.put(name, current);
+      return this;
+    }
+
+    /**
+     * 当前任务依赖的任务，可以依赖之后才添加的任务
+     */
+    @NonNull
+    public Builder dependsOn(@NonNull String... names) {
+      Collections.addAll(requireCurrent().dependencyNames, names);
+      return this;
+    }
+
+    /**
+     * 当前任务在主线程执行
+     */
+    @NonNull
+    public Builder onMainThread() {
+      requireCurrent().mainThread = true;
+      return this;
+    }
+
+    /**
+     * {@link TaskGraph#await(long)} 需要等待当前任务完成
+     */
+    @NonNull
+    public Builder blocking() {
+      requireCurrent().blocking = true;
+      return this;
+    }
+
+    /**
+     * 每次调用创建新的 TaskGraph，和之前创建的互不影响，可以分别执行
+     *
+     * @throws IllegalStateException 依赖的任务不存在或者存在循环依赖
+     */
+    @NonNull
+    public TaskGraph build() {
+      // 执行状态保存在 Node 中，每个 TaskGraph 使用自己的副本
+      LinkedHashMap<String, Node> nodes = new LinkedHashMap<>();
+      for (Node spec : this.nodes.values()) {
+        nodes.put(spec.name, spec.copy());
+      }
+      for (Node spec : this.nodes.values()) {
+        Node node = nodes.get(spec.name);
+        for (String dependencyName : spec.dependencyNames) {
+          Node dependency = nodes.get(dependencyName);
+          if (dependency == null) {
+            throw new IllegalStateException(node.name + " depends on unknown task " + dependencyName);
+          }
+          if (!node.dependencies.contains(dependency)) {
+            node.dependencies.add(dependency);
+            dependency.dependents.add(node);
+          }
+        }
+      }
+
+      // Kahn 拓扑排序，同时检查循环依赖
+      ArrayList<Node> sorted = new ArrayList<>(nodes.size());
+      ArrayDeque<Node> ready = new ArrayDeque<>();
+      HashMap<Node, Integer> inDegree = new HashMap<>();
+      for (Node node : nodes.values()) {
+        inDegree.put(node, node.dependencies.size());
+        if (node.dependencies.isEmpty()) {
+          ready.add(node);
+        }
+      }
+      while (!ready.isEmpty()) {
+        Node node = ready.poll();
+        sorted.add(node);
+        for (Node dependent : node.dependents) {
+          int degree = inDegree.get(dependent) - 1;
+          inDegree.put(dependent, degree);
+          if (degree == 0) {
+            ready.add(dependent);
+          }
+        }
+      }
+      if (sorted.size() != nodes.size()) {
+        ArrayList<String> cycle = new ArrayList<>();
+        for (Node node : nodes.values()) {
+          if (inDegree.get(node) > 0) {
+            cycle.add(node.name);
+          }
+        }
+        throw new IllegalStateException("Cyclic dependency between " + cycle);
+      }
+
+      TaskGraph graph = new TaskGraph(sorted);
+      for (Node node : sorted) {
+        node.remaining.set(node.dependencies.size());
+        node.runner = graph.new NodeRunner(node);
+      }
+      return graph;
+    }
+
+    private Node requireCurrent() {
+      if (current == null) {
+        throw new IllegalStateException("Call add() first");
+      }
+      return current;
+    }
+  }
+}
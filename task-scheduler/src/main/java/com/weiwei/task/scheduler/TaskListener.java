@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 任务执行事件的监听，通过 {@link TaskMonitor#addListener(TaskListener)} 注册，
+ * 只有开启 {@link TaskSchedulerConfig.Builder#monitor(boolean)} 后才会回调
+ * 回调在提交任务或执行任务的线程中同步执行，不要做耗时操作
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public interface TaskListener {
+  /**
+   * 任务提交到线程池
+   *
+   * @param name 任务名，Task 为 {@link Task#getTaskName()}，Runnable 为类名
+   * @param executor 线程池名：parallel、io、qos
+   */
+  void onEnqueue(@NonNull String name, @NonNull String executor);
+
+  /**
+   * 任务开始执行，在执行任务的线程回调
+   *
+   * @param waitNanos 在队列中等待的时间
+   */
+  void onStart(@NonNull String name, long waitNanos);
+
+  /**
+   * 任务执行结束，在执行任务的线程回调
+   *
+   * @param runNanos 执行耗时
+   * @param error 任务抛出的异常，Task 的异常由 onFail 处理，这里为 null
+   */
+  void onEnd(@NonNull String name, long runNanos, @Nullable Throwable error);
+
+  /**
+   * 线程池满了拒绝任务：并行线程池转交给 IO 线程池，或者 IO 线程池按照 {@link BoundedExecutor.Policy} 处理
+   *
+   * @param executor 拒绝任务的线程池名
+   */
+  void onReject(@NonNull String name, @NonNull String executor);
+}
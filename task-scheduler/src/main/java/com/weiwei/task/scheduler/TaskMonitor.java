@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.TraceCompat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务的执行统计：每个任务名的排队耗时、执行耗时直方图和拒绝次数，以及 {@link TaskListener} 回调和 systrace 分段
+ * 通过 {@link TaskSchedulerConfig.Builder#monitor(boolean)} 开启，关闭时提交的任务不会被包装，没有额外开销
+ *
+ * <pre>
+ * TaskScheduler.init(new TaskSchedulerConfig.Builder().monitor(true).traceSections(true).build());
+ * ...
+ * Log.d(TAG, TaskScheduler.monitor().dump());
+ * </pre>
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class TaskMonitor {
+  private static final String TAG = "TaskMonitor";
+
+  static final String EXECUTOR_PARALLEL = "parallel";
+  static final String EXECUTOR_IO = "io";
+  static final String EXECUTOR_QOS = "qos";
+
+  /**
+   * systrace 分段名最长 127 个字符
+   */
+  private static final int MAX_SECTION_LENGTH = 127;
+
+  private final boolean enabled;
+  private final boolean traceSections;
+  private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+  private final CopyOnWriteArrayList<TaskListener> listeners = new CopyOnWriteArrayList<>();
+
+  TaskMonitor(boolean enabled, boolean traceSections) {
+    this.enabled = enabled;
+    this.traceSections = traceSections;
+  }
+
+  /**
+   * @return 是否开启了统计
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void addListener(@NonNull TaskListener listener) {
+    listeners.addIfAbsent(listener);
+  }
+
+  public void removeListener(@NonNull TaskListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * 清空已有的统计
+   */
+  public void reset() {
+    stats.clear();
+  }
+
+  /**
+   * @return 每个任务名的执行次数、拒绝次数、排队和执行耗时的分布，按执行总次数降序
+   */
+  @NonNull
+  public String dump() {
+    if (!enabled) {
+      return "TaskMonitor is disabled";
+    }
+    List<Map.Entry<String, Stats>> entries = new ArrayList<>(stats.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, Stats>>() {
+      @Override
+      public int compare(Map.Entry<String, Stats> left, Map.Entry<String, Stats> right) {
+        long l = left.getValue().run.getCount();
+        long r = right.getValue().run.getCount();
+        return l == r ? 0 : (l > r ? -1 : 1);
+      }
+    });
+
+    StringBuilder builder = new StringBuilder("TaskMonitor ").append(entries.size()).append(" tasks\n");
+    for (Map.Entry<String, Stats> entry : entries) {
+      Stats s = entry.getValue();
+      builder.append("  ").append(entry.getKey())
+          .append(": enqueued=").append(s.enqueued.get())
+          .append(", finished=").append(s.run.getCount())
+          .append(", rejected=").append(s.rejected.get())
+          .append("\n    wait ");
+      s.wait.appendTo(builder);
+      builder.append("\n    run  ");
+      s.run.appendTo(builder);
+      builder.append('\n');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * 关闭时直接返回 runnable
+   *
+   * @param executor 提交到的线程池名
+   */
+  @NonNull
+  Runnable wrap(@NonNull Runnable runnable, @NonNull String executor) {
+    if (!enabled || runnable instanceof Tracked) {
+      return runnable;
+    }
+    String name = nameOf(runnable);
+    Stats s = statsOf(name);
+    s.enqueued.incrementAndGet();
+    for (TaskListener listener : listeners) {
+      try {
+        listener.onEnqueue(name, executor);
+      } catch (Throwable t) {
+        Log.e(TAG, "dispatch onEnqueue error " + t);
+      }
+    }
+    return new Tracked(this, runnable, name, s);
+  }
+
+  /**
+   * 线程池拒绝任务时调用，只统计经过 {@link #wrap(Runnable, String)} 的任务
+   */
+  void onReject(@NonNull Runnable runnable, @NonNull String executor) {
+    if (!(runnable instanceof Tracked)) {
+      return;
+    }
+    Tracked tracked = (Tracked) runnable;
+    tracked.stats.rejected.incrementAndGet();
+    for (TaskListener listener : listeners) {
+      try {
+        listener.onReject(tracked.name, executor);
+      } catch (Throwable t) {
+        Log.e(TAG, "dispatch onReject error " + t);
+      }
+    }
+  }
+
+  /**
+   * @return 被 {@link #wrap(Runnable, String)} 包装前的任务
+   */
+  @NonNull
+  static Runnable unwrap(@NonNull Runnable runnable) {
+    return runnable instanceof Tracked ? ((Tracked) runnable).runnable : runnable;
+  }
+
+  private Stats statsOf(String name) {
+    Stats s = stats.get(name);
+    if (s == null) {
+      Stats created = new Stats();
+      s = stats.putIfAbsent(name, created);
+      if (s == null) {
+        s = created;
+      }
+    }
+    return s;
+  }
+
+  private static String nameOf(Runnable runnable) {
+    if (runnable instanceof Task) {
+      return ((Task<?>) runnable).getTaskName();
+    }
+    return runnable.getClass().getName();
+  }
+
+  /**
+   * 监听器抛出的异常只打印日志，不影响任务执行和其他监听器
+   */
+  private void dispatchStart(String name, long waitNanos) {
+    for (TaskListener listener : listeners) {
+      try {
+        listener.onStart(name, waitNanos);
+      } catch (Throwable t) {
+        Log.e(TAG, "dispatch onStart error " + t);
+      }
+    }
+  }
+
+  private void dispatchEnd(String name, long runNanos, @Nullable Throwable error) {
+    for (TaskListener listener : listeners) {
+      try {
+        listener.onEnd(name, runNanos, error);
+      } catch (Throwable t) {
+        Log.e(TAG, "dispatch onEnd error " + t);
+      }
+    }
+  }
+
+  private static final class Stats {
+    final LatencyHistogram wait = new LatencyHistogram();
+    final LatencyHistogram run = new LatencyHistogram();
+    final AtomicLong enqueued = new AtomicLong();
+    final AtomicLong rejected = new AtomicLong();
+  }
+
+  private static final class Tracked implements Runnable {
+    private final TaskMonitor monitor;
+    private final Runnable runnable;
+    private final String name;
+    private final Stats stats;
+    private final long enqueueNanos = System.nanoTime();
+
+    Tracked(TaskMonitor monitor, Runnable runnable, String name, Stats stats) {
+      this.monitor = monitor;
+      this.runnable = runnable;
+      this.name = name;
+      this.stats = stats;
+    }
+
+    @Override
+    public void run() {
+      long startNanos = System.nanoTime();
+      long waitNanos = startNanos - enqueueNanos;
+      stats.wait.record(waitNanos);
+      monitor.dispatchStart(name, waitNanos);
+
+      boolean trace = monitor.traceSections;
+      if (trace) {
+        TraceCompat.beginSection(name.length() > MAX_SECTION_LENGTH ? name.substring(name.length() - MAX_SECTION_LENGTH) : name);
+      }
+      Throwable error = null;
+      try {
+        runnable.run();
+      } catch (RuntimeException | Error e) {
+        error = e;
+        throw e;
+      } finally {
+        if (trace) {
+          TraceCompat.endSection();
+        }
+        long runNanos = System.nanoTime() - startNanos;
+        stats.run.record(runNanos);
+        monitor.dispatchEnd(name, runNanos, error);
+      }
+    }
+  }
+}
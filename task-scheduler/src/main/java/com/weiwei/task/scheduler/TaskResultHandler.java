@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.view.Choreographer;
+import androidx.annotation.NonNull;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 把 Task 的结果分发到主线程，使用 Message 池中的 Message，不需要为每次回调创建 Runnable
+ * 开启批量分发后，同一帧内完成的任务结果合并为一次主线程分发，按完成顺序回调
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class TaskResultHandler extends Handler {
+  static final int MSG_SUCCESS = 1;
+  static final int MSG_FAIL = 2;
+  static final int MSG_CANCEL = 3;
+  private static final int MSG_SCHEDULE_BATCH = 4;
+
+  private final boolean batching;
+
+  /**
+   * 等待批量分发的任务，通过 Task#pendingNext 串成的栈，最后完成的任务在栈顶
+   */
+  private final AtomicReference<Task<?>> pendingHead = new AtomicReference<>();
+
+  private final Choreographer.FrameCallback batchCallback = new Choreographer.FrameCallback() {
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      dispatchBatch();
+    }
+  };
+
+  TaskResultHandler(@NonNull Looper looper, boolean batching) {
+    super(looper);
+    this.batching = batching;
+  }
+
+  void send(int what, @NonNull Task<?> task) {
+    // 取消需要尽快回调，不参与合并；已经在栈中的任务不能再入栈，否则会覆盖 pendingNext 把其他任务从栈中断开
+    if (!batching || what == MSG_CANCEL || !task.batchQueued.compareAndSet(false, true)) {
+      sendMessage(obtainMessage(what, task));
+      return;
+    }
+
+    task.pendingWhat = what;
+    Task<?> head;
+    do {
+      head = pendingHead.get();
+      task.pendingNext = head;
+    } while (!pendingHead.compareAndSet(head, task));
+
+    // 只有这一批的第一个任务需要发消息
+    if (head == null) {
+      sendEmptyMessage(MSG_SCHEDULE_BATCH);
+    }
+  }
+
+  @Override
+  public void handleMessage(@NonNull Message msg) {
+    if (msg.what == MSG_SCHEDULE_BATCH) {
+      Choreographer.getInstance().postFrameCallback(batchCallback);
+    } else {
+      ((Task<?>) msg.obj).dispatchResult(msg.what);
+    }
+  }
+
+  private void dispatchBatch() {
+    Task<?> task = pendingHead.getAndSet(null);
+
+    // 栈是逆序的，翻转回完成顺序
+    Task<?> ordered = null;
+    while (task != null) {
+      Task<?> next = task.pendingNext;
+      task.pendingNext = ordered;
+      ordered = task;
+      task = next;
+    }
+
+    while (ordered != null) {
+      Task<?> next = ordered.pendingNext;
+      int what = ordered.pendingWhat;
+      ordered.pendingNext = null;
+      ordered.batchQueued.set(false);
+      ordered.dispatchResult(what);
+      ordered = next;
+    }
+  }
+}
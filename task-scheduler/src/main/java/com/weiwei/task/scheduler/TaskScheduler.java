@@ -19,34 +19,82 @@ import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Process;
+import androidx.annotation.NonNull;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author weicools
  * @date 2021.04.02
  */
 public final class TaskScheduler {
+  /**
+   * 初始化全局配置，必须在第一次使用 TaskScheduler 之前调用（建议在 Application#onCreate 中），否则抛出 IllegalStateException
+   *
+   * @param config 全局配置
+   */
+  public static void init(@NonNull TaskSchedulerConfig config) {
+    TaskExecutor.init(config);
+  }
+
   /**
    * 提供一个并行线程池，适合执行 CPU 密集型任务
+   * 开启 {@link TaskSchedulerConfig.Builder#workStealing(boolean)} 后为 ForkJoinPool，每个线程拥有独立的任务队列
    */
   public static ExecutorService parallelExecutor() {
     return TaskExecutor.get().getParallelExecutor();
   }
 
   /**
-   * 提供一个超时线程池，适合执行 IO 等超时任务
+   * 提供一个超时线程池，适合执行 IO 等超时任务，和 {@link #ioExecutor()} 是同一个线程池
    */
   public static ExecutorService timeoutExecutor() {
     return TaskExecutor.get().getTimeOutExecutor();
   }
 
+  /**
+   * 提供一个有上限的 IO 线程池，可以获取运行中的线程数、队列长度和拒绝次数
+   * 线程数、队列长度和拒绝策略通过 {@link TaskSchedulerConfig.Builder#ioPool(int, int)} 等配置
+   */
+  public static BoundedExecutor ioExecutor() {
+    return TaskExecutor.get().getTimeOutExecutor();
+  }
+
+  /**
+   * 任务的执行统计，需要开启 {@link TaskSchedulerConfig.Builder#monitor(boolean)}
+   * 只统计通过 executeTask、executeIOTask、executeTimeOutTask 提交的任务，直接使用线程池提交的任务不统计
+   */
+  @NonNull
+  public static TaskMonitor monitor() {
+    return TaskExecutor.get().getMonitor();
+  }
+
+  /**
+   * 创建一个在并行线程池中运行的串行执行器，不占用单独的线程，IO 任务可以使用 {@code new SerialExecutor(ioExecutor())}
+   */
+  @NonNull
+  public static SerialExecutor newSerialExecutor() {
+    return new SerialExecutor(parallelExecutor());
+  }
+
+  /**
+   * 创建一个在并行线程池中运行的按 key 串行的执行器，空闲的 key 会自动释放
+   */
+  @NonNull
+  public static <K> KeyedSerialExecutor<K> newKeyedSerialExecutor() {
+    return new KeyedSerialExecutor<>(parallelExecutor());
+  }
+
+  /**
+   * 主线程卡顿监控，调用 {@link JankWatchdog#start(long)} 后开始记录慢消息
+   */
+  @NonNull
+  public static JankWatchdog jankWatchdog() {
+    return TaskExecutor.get().getJankWatchdog();
+  }
+
   /**
    * 提供一个全局的主线程 handler
    */
@@ -68,6 +116,7 @@ public final class TaskScheduler {
 
   /**
    * 获取回调到 handlerName 线程的 handler. 一般用于在一个后台线程执行同一种任务，避免线程安全问题。
+   * 每次调用创建一个独立的线程，不再使用时需要 getLooper().quit()；需要复用线程时用 {@link #acquireLooper(String, int)}
    *
    * @param handlerName 线程名
    * @param priority 线程优先级
@@ -79,40 +128,66 @@ public final class TaskScheduler {
     return new Handler(handlerThread.getLooper());
   }
 
+  public static Looper acquireLooper(@NonNull String name) {
+    return acquireLooper(name, Process.THREAD_PRIORITY_BACKGROUND);
+  }
+
+  /**
+   * 获取名称为 name 的 HandlerThread 的 Looper，同一个名称返回同一个 Looper，引用计数加一
+   * 每次获取都需要对应一次 {@link #releaseLooper(String)}，全部释放后空闲一段时间线程自动退出
+   *
+   * @param name 线程名
+   * @param priority 线程优先级，只在第一次创建线程时生效
+   */
+  @NonNull
+  public static Looper acquireLooper(@NonNull String name, int priority) {
+    return TaskExecutor.get().getLooperPool().acquire(name, priority);
+  }
+
+  /**
+   * 释放 {@link #acquireLooper(String, int)} 获取的 Looper，引用计数减一，释放后不要再向该 Looper 发送消息
+   */
+  public static void releaseLooper(@NonNull String name) {
+    TaskExecutor.get().getLooperPool().release(name);
+  }
+
+  /**
+   * @return 存活的 HandlerThread 数量，包括全部释放后等待退出的
+   */
+  public static int liveLooperCount() {
+    return TaskExecutor.get().getLooperPool().getLiveCount();
+  }
+
   //region 周期性执行任务
   /**
-   * 主线程周期性执行任务，默认立刻执行，之后间隔period执行，不需要时注意取消,每次执行时如果有相同的任务，默认会先取消
+   * 周期性执行任务，默认立刻执行，之后间隔period执行，不需要时注意取消,每次执行时如果有相同的任务，默认会先取消
+   * 所有周期性任务共用一个时间轮线程，后台任务在 IO 线程池执行，上一次没执行完时跳过本次周期
    *
    * @param task 执行的任务
    */
   public static void scheduleTask(final SchedulerTask task) {
-    task.canceled.compareAndSet(true, false);
-
-    final ScheduledExecutorService service = TaskExecutor.get().createScheduledExecutor();
-
-    service.scheduleAtFixedRate(new Runnable() {
-      @Override
-      public void run() {
-        if (task.canceled.get()) {
-          service.shutdownNow();
-        } else {
-          if (task.mainThread) {
-            runOnUIThread(task);
-          } else {
-            task.run();
-          }
-        }
+    synchronized (task) {
+      if (task.timeout != null) {
+        task.timeout.cancel();
       }
-    }, task.startDelayMillisecond, task.periodMillisecond, TimeUnit.MILLISECONDS);
+      task.canceled.set(false);
+      task.timeout = TaskExecutor.get().getTimer().schedule(task.dispatcher, task.startDelayMillisecond, task.periodMillisecond);
+    }
   }
 
   /**
-   * 取消周期性任务
+   * 取消周期性任务，任务会立即从时间轮中移除
    *
    * @param schedulerTask 任务对象
    */
   public static void stopScheduleTask(final SchedulerTask schedulerTask) {
-    schedulerTask.canceled.compareAndSet(false, true);
+    schedulerTask.canceled.set(true);
+    synchronized (schedulerTask) {
+      if (schedulerTask.timeout != null) {
+        schedulerTask.timeout.cancel();
+        schedulerTask.timeout = null;
+      }
+    }
   }
   //endregion
 
@@ -120,14 +195,88 @@ public final class TaskScheduler {
    * 执行一个后台任务，无回调
    **/
   public static void executeTask(Runnable task) {
-    parallelExecutor().execute(task);
+    parallelExecutor().execute(monitor().wrap(task, TaskMonitor.EXECUTOR_PARALLEL));
   }
 
   /**
    * 执行一个后台任务，有回调
+   * {@link SplitTask} 在 work-stealing 模式下会被拆分成子任务并行执行
    **/
   public static <R> void executeTask(Task<R> task) {
-    parallelExecutor().execute(task);
+    task.prepareSubmit();
+    parallelExecutor().execute(monitor().wrap(task, TaskMonitor.EXECUTOR_PARALLEL));
+  }
+
+  /**
+   * 执行一个后台任务，失败时按照重试策略重新执行，等待期间不占用线程，全部重试失败后回调 onFail
+   *
+   * @param policy 重试策略
+   */
+  public static <R> void executeTask(Task<R> task, RetryPolicy policy) {
+    task.executeWithRetry(policy, parallelExecutor(), TaskMonitor.EXECUTOR_PARALLEL);
+  }
+
+  /**
+   * 按 key 合并执行：同一个 key 正在执行时不会重复执行 doInBackground，结果分发给每个提交的 Task
+   *
+   * @param key 相同 key 的 Task 必须返回相同类型的结果
+   */
+  public static <R> void executeShared(@NonNull String key, @NonNull Task<R> task) {
+    executeShared(key, 0L, task);
+  }
+
+  /**
+   * 按 key 合并执行，并缓存成功的结果 ttlMillis，有效期内提交的 Task 直接回调缓存的结果，不再执行
+   *
+   * @param key 相同 key 的 Task 必须返回相同类型的结果
+   * @param ttlMillis 结果缓存时间，小于等于 0 时不缓存
+   */
+  public static <R> void executeShared(@NonNull String key, long ttlMillis, @NonNull Task<R> task) {
+    TaskExecutor.get().getSingleFlight().execute(key, ttlMillis, task, parallelExecutor());
+  }
+
+  /**
+   * 清除 key 缓存的结果，不影响正在执行的任务
+   */
+  public static void invalidateShared(@NonNull String key) {
+    TaskExecutor.get().getSingleFlight().invalidate(key);
+  }
+
+  /**
+   * 按服务质量等级执行一个后台任务，无回调
+   * 高等级任务优先执行，线程优先级在任务执行期间设置为等级对应的优先级
+   *
+   * @param qos 任务等级
+   */
+  public static void executeTask(Runnable task, QosClass qos) {
+    TaskExecutor.get().getQosExecutor().execute(monitor().wrap(task, TaskMonitor.EXECUTOR_QOS), qos);
+  }
+
+  /**
+   * 按服务质量等级执行一个后台任务，有回调
+   *
+   * @param qos 任务等级
+   */
+  public static <R> void executeTask(Task<R> task, QosClass qos) {
+    task.prepareSubmit();
+    TaskExecutor.get().getQosExecutor().execute(monitor().wrap(task, TaskMonitor.EXECUTOR_QOS), qos);
+  }
+
+  /**
+   * 创建绑定生命周期的任务组，Lifecycle.Event.ON_DESTROY 时取消组内全部任务
+   */
+  @NonNull
+  public static LifecycleTaskGroup taskGroup(@NonNull LifecycleOwner lifecycleOwner) {
+    return new LifecycleTaskGroup(lifecycleOwner, Lifecycle.Event.ON_DESTROY);
+  }
+
+  /**
+   * 创建绑定生命周期的任务组，指定的 Lifecycle.Event 时取消组内全部任务，等待中的任务从线程池队列移除，执行中的任务被中断
+   * 没有到达 targetEvent 就销毁时，ON_DESTROY 同样会取消
+   */
+  @NonNull
+  public static LifecycleTaskGroup taskGroup(@NonNull LifecycleOwner lifecycleOwner, @NonNull Lifecycle.Event targetEvent) {
+    return new LifecycleTaskGroup(lifecycleOwner, targetEvent);
   }
 
   /**
@@ -145,43 +294,41 @@ public final class TaskScheduler {
    * 执行一个后台IO任务，无回调
    **/
   public static void executeIOTask(Runnable task) {
-    timeoutExecutor().execute(task);
+    timeoutExecutor().execute(monitor().wrap(task, TaskMonitor.EXECUTOR_IO));
   }
 
   /**
    * 执行一个后台IO任务，有回调
    **/
   public static <R> void executeIOTask(Task<R> task) {
-    timeoutExecutor().execute(task);
+    task.prepareSubmit();
+    timeoutExecutor().execute(monitor().wrap(task, TaskMonitor.EXECUTOR_IO));
+  }
+
+  /**
+   * 执行一个后台IO任务，失败时按照重试策略重新执行，适合网络请求等可能临时失败的任务
+   *
+   * @param policy 重试策略
+   */
+  public static <R> void executeIOTask(Task<R> task, RetryPolicy policy) {
+    task.executeWithRetry(policy, timeoutExecutor(), TaskMonitor.EXECUTOR_IO);
   }
 
   /**
    * 使用一个单独的线程池来执行超时任务，避免引起他线程不够用导致超时
-   * 通过实现error(Exception) 判断是否为 TimeoutException 来判断是否超时,
-   * 不能100%保证实际的超时时间就是timeOutMillis，但一般没必要那么精确
+   * 超时后会中断执行线程，并通过 onFail(Throwable) 回调 TimeoutException，之后任务的结果不再回调。
+   * 截止时间由共用的时间轮触发，不会额外占用线程等待，精度约为 10ms
    *
-   * @param timeOutMillis 超时时间，单位毫秒
+   * @param timeOutMillis 超时时间，单位毫秒，从提交时开始计时
    */
   public static <R> void executeTimeOutTask(final long timeOutMillis, final Task<R> timeOutTask) {
-    final Future<?> future = timeoutExecutor().submit(timeOutTask);
-
-    timeoutExecutor().execute(new Runnable() {
-      @Override
-      public void run() {
-        try {
-          future.get(timeOutMillis, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-          runOnUIThread(new Runnable() {
-            @Override
-            public void run() {
-              if (!timeOutTask.isCanceled()) {
-                timeOutTask.cancel();
-              }
-            }
-          });
-        }
-      }
-    });
+    timeOutTask.startDeadline(timeOutMillis);
+    try {
+      timeoutExecutor().execute(monitor().wrap(timeOutTask, TaskMonitor.EXECUTOR_IO));
+    } catch (RejectedExecutionException e) {
+      timeOutTask.finishBeforeDeadline();
+      throw e;
+    }
   }
 
   public static void removeUICallback(Runnable runnable) {
@@ -196,6 +343,23 @@ public final class TaskScheduler {
     mainHandler().postDelayed(runnable, delayed);
   }
 
+  /**
+   * 在主线程空闲时执行，适合预创建 View、预热缓存等可以推迟的主线程任务
+   * 每次空闲最多执行 {@link TaskSchedulerConfig.Builder#idleBudget(long)} 的任务，剩余任务等待下一次空闲，按提交顺序执行
+   */
+  public static void runOnIdle(@NonNull Runnable runnable) {
+    TaskExecutor.get().getIdleTaskQueue().add(runnable);
+  }
+
+  /**
+   * 移除还没有执行的空闲任务
+   *
+   * @return 任务是否还在队列中
+   */
+  public static boolean removeIdleTask(@NonNull Runnable runnable) {
+    return TaskExecutor.get().getIdleTaskQueue().remove(runnable);
+  }
+
   /**
    * 执行有生命周期的任务, Lifecycle.Event.ON_DESTROY 移除任务
    */
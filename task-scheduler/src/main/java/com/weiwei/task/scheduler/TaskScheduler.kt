@@ -28,6 +28,8 @@ inline val parallelExecutor: ExecutorService get() = TaskScheduler.parallelExecu
 
 inline val timeoutExecutor: ExecutorService get() = TaskScheduler.timeoutExecutor()
 
+inline val ioExecutor: BoundedExecutor get() = TaskScheduler.ioExecutor()
+
 inline val mainHandler: Handler get() = TaskScheduler.mainHandler()
 
 inline val asyncHandler: Handler get() = TaskScheduler.asyncHandler()
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import androidx.annotation.NonNull;
+
+/**
+ * TaskScheduler 的全局配置，需要在第一次使用 TaskScheduler 之前通过 {@link TaskScheduler#init(TaskSchedulerConfig)} 设置
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class TaskSchedulerConfig {
+
+  final boolean debugLog;
+  final boolean batchResults;
+  final boolean workStealing;
+  final boolean monitor;
+  final boolean traceSections;
+
+  final int ioMaxThreads;
+  final int ioQueueCapacity;
+  final BoundedExecutor.Policy ioPolicy;
+  final long ioBlockTimeoutMillis;
+  final long looperIdleTimeoutMillis;
+  final long idleBudgetMillis;
+
+  private TaskSchedulerConfig(Builder builder) {
+    this.debugLog = builder.debugLog;
+    this.batchResults = builder.batchResults;
+    this.workStealing = builder.workStealing;
+    this.monitor = builder.monitor;
+    this.traceSections = builder.traceSections;
+    this.ioMaxThreads = builder.ioMaxThreads;
+    this.ioQueueCapacity = builder.ioQueueCapacity;
+    this.ioPolicy = builder.ioPolicy;
+    this.ioBlockTimeoutMillis = builder.ioBlockTimeoutMillis;
+    this.looperIdleTimeoutMillis = builder.looperIdleTimeoutMillis;
+    this.idleBudgetMillis = builder.idleBudgetMillis;
+  }
+
+  @NonNull
+  public static TaskSchedulerConfig defaultConfig() {
+    return new Builder().build();
+  }
+
+  public static final class Builder {
+    private boolean debugLog;
+    private boolean batchResults;
+    private boolean workStealing;
+    private boolean monitor;
+    private boolean traceSections;
+
+    private int ioMaxThreads = 32;
+    private int ioQueueCapacity = 256;
+    private BoundedExecutor.Policy ioPolicy = BoundedExecutor.Policy.SPILL;
+    private long ioBlockTimeoutMillis = 1000L;
+    private long looperIdleTimeoutMillis = 10_000L;
+    private long idleBudgetMillis = 8L;
+
+    /**
+     * 输出每个任务的执行日志，默认关闭，关闭时不会拼接日志字符串
+     */
+    @NonNull
+    public Builder debugLog(boolean enabled) {
+      this.debugLog = enabled;
+      return this;
+    }
+
+    /**
+     * 同一帧内完成的 Task 结果合并为一次主线程分发，按完成顺序回调 onSuccess/onFail，默认关闭
+     * 开启后回调最多会延迟到下一帧，适合大量列表项任务同时完成的场景
+     */
+    @NonNull
+    public Builder batchResults(boolean enabled) {
+      this.batchResults = enabled;
+      return this;
+    }
+
+    /**
+     * 并行线程池使用 work-stealing 模式（每个线程独立的任务队列），API 21 以下自动降级为普通线程池
+     */
+    @NonNull
+    public Builder workStealing(boolean enabled) {
+      this.workStealing = enabled;
+      return this;
+    }
+
+    /**
+     * 统计通过 TaskScheduler 提交的任务的排队耗时、执行耗时和拒绝次数，并回调 {@link TaskListener}，默认关闭
+     * 结果通过 {@link TaskScheduler#monitor()} 获取
+     */
+    @NonNull
+    public Builder monitor(boolean enabled) {
+      this.monitor = enabled;
+      return this;
+    }
+
+    /**
+     * 开启 monitor 后，每个任务的执行过程以任务名作为 systrace 分段，默认关闭
+     */
+    @NonNull
+    public Builder traceSections(boolean enabled) {
+      this.traceSections = enabled;
+      return this;
+    }
+
+    /**
+     * IO 线程池的最大线程数和等待队列长度，默认 32 和 256
+     */
+    @NonNull
+    public Builder ioPool(int maxThreads, int queueCapacity) {
+      if (maxThreads <= 0 || queueCapacity <= 0) {
+        throw new IllegalArgumentException("maxThreads=" + maxThreads + ", queueCapacity=" + queueCapacity);
+      }
+      this.ioMaxThreads = maxThreads;
+      this.ioQueueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * IO 线程池线程和队列都满了之后的处理策略，默认 {@link BoundedExecutor.Policy#SPILL}
+     */
+    @NonNull
+    public Builder ioPolicy(@NonNull BoundedExecutor.Policy policy) {
+      this.ioPolicy = policy;
+      return this;
+    }
+
+    /**
+     * {@link BoundedExecutor.Policy#BLOCK} 策略下最长的阻塞时间，默认 1000ms
+     */
+    @NonNull
+    public Builder ioBlockTimeout(long timeoutMillis) {
+      this.ioBlockTimeoutMillis = timeoutMillis;
+      return this;
+    }
+
+    /**
+     * {@link TaskScheduler#acquireLooper(String, int)} 获取的 Looper 全部释放后，等待多久退出线程，默认 10s
+     */
+    @NonNull
+    public Builder looperIdleTimeout(long timeoutMillis) {
+      this.looperIdleTimeoutMillis = timeoutMillis;
+      return this;
+    }
+
+    /**
+     * {@link TaskScheduler#runOnIdle(Runnable)} 每次主线程空闲时最多执行多久的任务，默认 8ms（半帧）
+     */
+    @NonNull
+    public Builder idleBudget(long budgetMillis) {
+      this.idleBudgetMillis = budgetMillis;
+      return this;
+    }
+
+    @NonNull
+    public TaskSchedulerConfig build() {
+      return new TaskSchedulerConfig(this);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.weiwei.task.scheduler;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import java.util.concurrent.Executor;
+
+/**
+ * 节流：每 intervalMillis 最多执行一次 action，适合传感器、滚动等高频事件
+ * 间隔内的调用被合并，trailing 为 true 时间隔结束后再补执行一次，保证最后一次调用不会丢失
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+public final class Throttler {
+  private final long intervalMillis;
+  private final boolean trailing;
+  private final Runnable action;
+  private final DispatchTarget target;
+
+  /**
+   * 上一次执行的时间，初始值保证第一次调用立即执行
+   */
+  private long lastRunMillis = Long.MIN_VALUE / 2;
+  private boolean armed;
+
+  private final Runnable trailingRun = new Runnable() {
+    @Override
+    public void run() {
+      onTimer();
+    }
+  };
+
+  /**
+   * action 在主线程执行
+   */
+  public Throttler(long intervalMillis, boolean trailing, @NonNull Runnable action) {
+    this(intervalMillis, trailing, TaskScheduler.mainHandler(), action);
+  }
+
+  public Throttler(long intervalMillis, boolean trailing, @NonNull Handler handler, @NonNull Runnable action) {
+    this.intervalMillis = intervalMillis;
+    this.trailing = trailing;
+    this.action = action;
+    this.target = new DispatchTarget(handler, trailingRun);
+  }
+
+  public Throttler(long intervalMillis, boolean trailing, @NonNull Executor executor, @NonNull Runnable action) {
+    this.intervalMillis = intervalMillis;
+    this.trailing = trailing;
+    this.action = action;
+    this.target = new DispatchTarget(executor, trailingRun);
+  }
+
+  /**
+   * 距离上一次执行超过 intervalMillis 时立即执行，否则合并到间隔结束时（trailing 为 true）或者丢弃
+   */
+  public void call() {
+    synchronized (this) {
+      long now = SystemClock.uptimeMillis();
+      long elapsed = now - lastRunMillis;
+      if (elapsed < intervalMillis) {
+        if (trailing && !armed) {
+          armed = true;
+          target.schedule(intervalMillis - elapsed);
+        }
+        return;
+      }
+      lastRunMillis = now;
+    }
+    target.dispatch(action);
+  }
+
+  /**
+   * 取消间隔结束时的补执行
+   */
+  public void cancel() {
+    synchronized (this) {
+      armed = false;
+      target.cancelSchedule();
+    }
+  }
+
+  private void onTimer() {
+    synchronized (this) {
+      if (!armed) {
+        return;
+      }
+      armed = false;
+      lastRunMillis = SystemClock.uptimeMillis();
+    }
+    target.dispatch(action);
+  }
+}
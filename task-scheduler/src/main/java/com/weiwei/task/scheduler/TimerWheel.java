@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 哈希时间轮，所有延迟和周期性任务共用一个线程，插入和取消都是 O(1)
+ * 精度为一个 tick (10ms)，回调在时间轮线程执行，只适合做分发，耗时操作需要切换到其他线程
+ * 线程只在最近的截止时间唤醒，中间没有任务的 tick 直接跳过，长周期任务不会让线程每个 tick 都醒来
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+final class TimerWheel implements Runnable {
+  private static final String TAG = "TimerWheel";
+
+  private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+  private static final int WHEEL_SIZE = 512;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+  private final Bucket[] wheel = new Bucket[WHEEL_SIZE];
+  private final long startNanos = System.nanoTime();
+  private final String threadName;
+
+  /**
+   * 下一个需要处理的 tick，tick n 在 startNanos + n * TICK_NANOS 时处理
+   */
+  private long currentTick;
+  /**
+   * 最近的截止 tick，小于 currentTick 时表示已经处理过，需要重新查找；取消任务不更新，最多多醒来一次
+   */
+  private long nextTick = Long.MAX_VALUE;
+  private int pendingCount;
+  private Thread workerThread;
+
+  /**
+   * 只在时间轮线程中使用
+   */
+  private final ArrayList<Timeout> expired = new ArrayList<>();
+
+  TimerWheel(@NonNull String threadName) {
+    this.threadName = threadName;
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel[i] = new Bucket();
+    }
+  }
+
+  /**
+   * @param task 到期时在时间轮线程执行
+   * @param delayMillis 首次执行的延迟
+   * @param periodMillis 执行周期，小于等于 0 时只执行一次
+   */
+  @NonNull
+  Timeout schedule(@NonNull Runnable task, long delayMillis, long periodMillis) {
+    Timeout timeout = new Timeout(this, task, TimeUnit.MILLISECONDS.toNanos(Math.max(0L, periodMillis)));
+    synchronized (this) {
+      scheduleLocked(timeout, delayMillis);
+    }
+    return timeout;
+  }
+
+  /**
+   * 创建一个未调度的一次性任务，之后通过 {@link #reschedule(Timeout, long)} 反复调度，不需要每次创建新对象
+   */
+  @NonNull
+  Timeout newTimeout(@NonNull Runnable task) {
+    Timeout timeout = new Timeout(this, task, 0L);
+    timeout.canceled = true;
+    return timeout;
+  }
+
+  /**
+   * 重新调度一个一次性任务：还在等待时改为新的延迟，已经触发或取消时重新加入时间轮
+   */
+  synchronized void reschedule(@NonNull Timeout timeout, long delayMillis) {
+    if (timeout.bucket != null) {
+      timeout.bucket.remove(timeout);
+      pendingCount--;
+    }
+    timeout.canceled = false;
+    scheduleLocked(timeout, delayMillis);
+  }
+
+  /**
+   * 调用时必须持有锁
+   */
+  private void scheduleLocked(Timeout timeout, long delayMillis) {
+    if (pendingCount == 0) {
+      // 空闲时线程不走 tick，插入前先把 currentTick 追到当前时间
+      currentTick = Math.max(currentTick, (System.nanoTime() - startNanos) / TICK_NANOS);
+      notify();
+    }
+    timeout.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, delayMillis));
+    insert(timeout);
+
+    if (workerThread == null) {
+      workerThread = new WorkerThread(this, threadName);
+      workerThread.setDaemon(true);
+      workerThread.start();
+    }
+  }
+
+  /**
+   * 调用时必须持有锁
+   */
+  private void insert(Timeout timeout) {
+    long ticks = (timeout.deadlineNanos - startNanos + TICK_NANOS - 1) / TICK_NANOS;
+    if (ticks < currentTick) {
+      ticks = currentTick;
+    }
+    timeout.deadlineTick = ticks;
+    wheel[(int) (ticks & WHEEL_MASK)].add(timeout);
+    pendingCount++;
+    // nextTick 已经失效时时间轮线程会在等待前重新查找，这里不能直接覆盖，否则会漏掉更早的任务
+    if (nextTick >= currentTick && ticks < nextTick) {
+      nextTick = ticks;
+      // 时间轮线程可能在等待更晚的截止时间，唤醒后重新计算
+      if (workerThread != null && workerThread != Thread.currentThread()) {
+        LockSupport.unpark(workerThread);
+      }
+    }
+  }
+
+  synchronized boolean cancel(@NonNull Timeout timeout) {
+    if (timeout.canceled) {
+      return false;
+    }
+    timeout.canceled = true;
+    if (timeout.bucket != null) {
+      timeout.bucket.remove(timeout);
+      pendingCount--;
+    }
+    return true;
+  }
+
+  /**
+   * @return 当前线程是否为时间轮线程，时间轮线程只做分发，不能执行耗时任务
+   */
+  static boolean isTimerThread() {
+    return Thread.currentThread() instanceof WorkerThread;
+  }
+
+  /**
+   * @return 等待中的任务数
+   */
+  synchronized int pendingCount() {
+    return pendingCount;
+  }
+
+  @Override
+  public void run() {
+    for (; ; ) {
+      long waitNanos;
+      synchronized (this) {
+        if (pendingCount == 0) {
+          try {
+            wait();
+          } catch (InterruptedException ignored) {
+            // 时间轮线程不会被中断，继续等待
+          }
+          continue;
+        }
+        if (nextTick < currentTick) {
+          nextTick = findNextTick();
+        }
+        long targetTick = Math.max(currentTick, nextTick);
+        waitNanos = startNanos + targetTick * TICK_NANOS - System.nanoTime();
+        if (waitNanos <= 0) {
+          // 跳过的 tick 中没有到期的任务
+          currentTick = targetTick;
+          expireBucket(wheel[(int) (currentTick & WHEEL_MASK)]);
+          currentTick++;
+        }
+      }
+
+      if (waitNanos > 0) {
+        LockSupport.parkNanos(waitNanos);
+      } else if (!expired.isEmpty()) {
+        runExpired();
+      }
+    }
+  }
+
+  /**
+   * 调用时必须持有锁
+   */
+  private void expireBucket(Bucket bucket) {
+    Timeout timeout = bucket.head;
+    while (timeout != null) {
+      Timeout next = timeout.next;
+      if (timeout.deadlineTick <= currentTick) {
+        bucket.remove(timeout);
+        pendingCount--;
+        expired.add(timeout);
+      }
+      timeout = next;
+    }
+  }
+
+  /**
+   * 从 currentTick 开始按顺序查找最近的截止 tick，调用时必须持有锁
+   * 第 i 个桶中任务的截止 tick 不小于 currentTick + i，找到等于它的任务后后面的桶不需要再查
+   */
+  private long findNextTick() {
+    long min = Long.MAX_VALUE;
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      long tick = currentTick + i;
+      for (Timeout timeout = wheel[(int) (tick & WHEEL_MASK)].head; timeout != null; timeout = timeout.next) {
+        if (timeout.deadlineTick < min) {
+          min = timeout.deadlineTick;
+        }
+      }
+      if (min <= tick) {
+        return min;
+      }
+    }
+    return min;
+  }
+
+  private void runExpired() {
+    for (int i = 0, size = expired.size(); i < size; i++) {
+      Timeout timeout = expired.get(i);
+      if (timeout.periodNanos > 0) {
+        synchronized (this) {
+          if (timeout.canceled || timeout.bucket != null) {
+            continue;
+          }
+          // fixed-rate，错过的周期不补执行
+          timeout.deadlineNanos = Math.max(timeout.deadlineNanos + timeout.periodNanos, System.nanoTime());
+          insert(timeout);
+        }
+      } else {
+        synchronized (this) {
+          // 到期后又被 reschedule 重新加入时间轮的，等新的截止时间再执行
+          if (timeout.canceled || timeout.bucket != null) {
+            continue;
+          }
+          // 一次性任务到期后标记为结束，之后 cancel 返回 false，调用方据此判断是否已经触发
+          timeout.canceled = true;
+        }
+      }
+
+      try {
+        timeout.task.run();
+      } catch (Throwable t) {
+        Log.e(TAG, "run timer task error " + t);
+      }
+    }
+    expired.clear();
+  }
+
+  /**
+   * 时间轮中的一个任务，{@link #cancel()} 会立即把它从时间轮中移除
+   * 一次性任务的 cancel 和触发是互斥的：cancel 返回 true 时任务一定不会执行，返回 false 时任务已经触发或已被取消
+   */
+  static final class Timeout {
+    final TimerWheel timer;
+    final Runnable task;
+    final long periodNanos;
+
+    long deadlineNanos;
+    long deadlineTick;
+    volatile boolean canceled;
+
+    Bucket bucket;
+    Timeout prev;
+    Timeout next;
+
+    Timeout(TimerWheel timer, Runnable task, long periodNanos) {
+      this.timer = timer;
+      this.task = task;
+      this.periodNanos = periodNanos;
+    }
+
+    boolean cancel() {
+      return timer.cancel(this);
+    }
+  }
+
+  private static final class WorkerThread extends Thread {
+    WorkerThread(Runnable target, String name) {
+      super(target, name);
+    }
+  }
+
+  private static final class Bucket {
+    Timeout head;
+    Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      timeout.prev = tail;
+      timeout.next = null;
+      if (tail == null) {
+        head = timeout;
+      } else {
+        tail.next = timeout;
+      }
+      tail = timeout;
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.prev == null) {
+        head = timeout.next;
+      } else {
+        timeout.prev.next = timeout.next;
+      }
+      if (timeout.next == null) {
+        tail = timeout.prev;
+      } else {
+        timeout.next.prev = timeout.prev;
+      }
+      timeout.bucket = null;
+      timeout.prev = null;
+      timeout.next = null;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * 空闲任务：一次空闲的预算用完后，剩余任务在主线程没有其他消息时也能继续执行
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IdleTaskQueueTest {
+  private static final long BUDGET_MILLIS = 8;
+  private static final long TASK_MILLIS = 5;
+  private static final int TASK_COUNT = 10;
+
+  @Test
+  public void remainingTasksRunWithoutOtherMessages() throws InterruptedException {
+    final IdleTaskQueue queue = new IdleTaskQueue(BUDGET_MILLIS);
+    final List<Integer> executed = new ArrayList<>();
+    // 从后台线程提交，主线程上只有队列自己发送的注册消息
+    Thread submitter = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < TASK_COUNT; i++) {
+          final int index = i;
+          queue.add(new Runnable() {
+            @Override
+            public void run() {
+              // Robolectric 中 sleep 推进模拟时钟，每个任务都会消耗预算
+              SystemClock.sleep(TASK_MILLIS);
+              executed.add(index);
+            }
+          });
+        }
+      }
+    });
+    submitter.start();
+    submitter.join();
+
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertEquals(TASK_COUNT, executed.size());
+    assertEquals(0, queue.size());
+  }
+}
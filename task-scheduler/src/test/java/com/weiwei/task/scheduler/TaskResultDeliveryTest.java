@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2022 Weiwei. https://github.com/lecymeng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.weiwei.task.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import androidx.annotation.NonNull;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+/**
+ * Task 结果分发：每次回调对应各自的结果，稳定状态下分发路径不创建对象
+ *
+ * @author weicools
+ * @date 2022.10.18
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TaskResultDeliveryTest {
+  private static final Object RESULT = new Object();
+  private static final int WARMUP = 20_000;
+  private static final int ITERATIONS = 20_000;
+
+  @Test
+  public void rerunBeforeDispatchDeliversEachResult() {
+    final List<Integer> results = new ArrayList<>();
+    Task<Integer> task = new Task<Integer>() {
+      private int count;
+
+      @Override
+      public Integer doInBackground() {
+        return ++count;
+      }
+
+      @Override
+      public void onSuccess(Integer result) {
+        results.add(result);
+      }
+    };
+
+    task.run();
+    task.run();
+    task.run();
+    mainLooper().idle();
+
+    assertEquals(Arrays.asList(1, 2, 3), results);
+  }
+
+  @Test
+  public void successDeliveryDoesNotAllocate() {
+    Task<Object> task = new Task<Object>() {
+      @Override
+      public Object doInBackground() {
+        return RESULT;
+      }
+
+      @Override
+      public void onSuccess(Object result) {
+      }
+    };
+    // 同样经过主线程 Looper 的空消息，扣除 Looper 和 Message 本身的开销
+    final Handler baseline = new Handler(Looper.getMainLooper()) {
+      @Override
+      public void handleMessage(@NonNull Message msg) {
+      }
+    };
+    Runnable deliver = new Runnable() {
+      @Override
+      public void run() {
+        task.run();
+      }
+    };
+    Runnable empty = new Runnable() {
+      @Override
+      public void run() {
+        baseline.sendMessage(baseline.obtainMessage(1, RESULT));
+      }
+    };
+
+    measure(deliver, WARMUP);
+    measure(empty, WARMUP);
+    double deliverBytes = measure(deliver, ITERATIONS);
+    double emptyBytes = measure(empty, ITERATIONS);
+
+    // 任何对象至少 16 字节，差值小于它说明 Task 分发路径没有分配对象
+    double extraBytes = deliverBytes - emptyBytes;
+    assertTrue("Task delivery allocates " + extraBytes + " bytes per result", extraBytes < 16);
+  }
+
+  /**
+   * @return 每次提交加分发平均分配的字节数
+   */
+  private static double measure(Runnable submit, int iterations) {
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    ShadowLooper looper = mainLooper();
+    long start = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < iterations; i++) {
+      submit.run();
+      looper.idle();
+    }
+    return (double) (threadBean.getThreadAllocatedBytes(threadId) - start) / iterations;
+  }
+
+  private static ShadowLooper mainLooper() {
+    return shadowOf(Looper.getMainLooper());
+  }
+}